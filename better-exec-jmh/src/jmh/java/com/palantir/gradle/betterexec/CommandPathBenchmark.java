@@ -0,0 +1,86 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Resolving a command that lives in the last directory of the {@code PATH}, as the macOS workaround does. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:VisibilityModifier") // JMH sets the @Param fields directly
+public class CommandPathBenchmark {
+    private static final String COMMAND = "tool";
+
+    @Param({"5", "50"})
+    public int pathEntries;
+
+    private Path root;
+    private String pathEnvVar;
+
+    @Setup
+    public final void before() throws IOException {
+        root = Files.createTempDirectory("better-exec-jmh");
+        List<String> directories = new ArrayList<>();
+        for (int i = 0; i < pathEntries; i++) {
+            directories.add(Files.createDirectory(root.resolve("bin" + i)).toString());
+        }
+        Path tool = Files.createFile(root.resolve("bin" + (pathEntries - 1)).resolve(COMMAND));
+        tool.toFile().setExecutable(true);
+        pathEnvVar = String.join(":", directories);
+    }
+
+    @TearDown
+    public final void after() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public final Optional<Path> cached() {
+        return CommandPathCache.resolve(pathEnvVar, COMMAND);
+    }
+
+    @Benchmark
+    public final Optional<Path> uncached() {
+        return CommandPathCache.resolveUncached(pathEnvVar, COMMAND);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What {@code showRealTimeLogs} costs the process output pump, writing to the console directly or through
+ * {@link AsyncConsoleOutputStream}. The console is a {@link PrintStream} built the way the
+ * JDK builds {@code System.out}: auto flushing over a tiny buffer, so every write is a syscall. It writes to
+ * {@code /dev/null} so the benchmark measures the pump rather than a terminal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:VisibilityModifier") // JMH sets the @Param fields directly
+public class ConsoleFanOutBenchmark {
+    @Param({"96", "8192"})
+    public int chunkBytes;
+
+    private byte[] chunk;
+    private PrintStream console;
+    private OutputStream withConsole;
+    private OutputStream withAsyncConsole;
+    private OutputStream withoutConsole;
+
+    @Setup
+    public final void before() throws FileNotFoundException {
+        chunk = FakeProcessOutput.chunk(chunkBytes);
+        console = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream("/dev/null"), 128), true, StandardCharsets.UTF_8);
+        OutputStream inMemoryOutput = new HeadAndTailOutputCapture(64 * 1024, 256 * 1024);
+        withConsole = new FanOutOutputStream(List.of(inMemoryOutput, console));
+        withAsyncConsole = new FanOutOutputStream(List.of(inMemoryOutput, new AsyncConsoleOutputStream(console)));
+        withoutConsole = new FanOutOutputStream(List.of(inMemoryOutput));
+    }
+
+    @TearDown
+    public final void after() {
+        console.close();
+    }
+
+    @Benchmark
+    public final void withConsole() throws IOException {
+        withConsole.write(chunk, 0, chunk.length);
+    }
+
+    /** Includes dropping whatever the console writer thread cannot keep up with. */
+    @Benchmark
+    public final void withAsyncConsole() throws IOException {
+        withAsyncConsole.write(chunk, 0, chunk.length);
+    }
+
+    @Benchmark
+    public final void withoutConsole() throws IOException {
+        withoutConsole.write(chunk, 0, chunk.length);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Stands in for a process writing build tool style log lines, in chunks of whatever size its pipe reads give. */
+final class FakeProcessOutput {
+    private static final String LINE =
+            "[main] INFO com.example.Compiler - Compiled src/main/proto/com/example/service.proto in 12ms\n";
+
+    private FakeProcessOutput() {}
+
+    static byte[] chunk(int chunkBytes) {
+        byte[] line = LINE.getBytes(StandardCharsets.UTF_8);
+        byte[] chunk = new byte[chunkBytes];
+        for (int i = 0; i < chunkBytes; i++) {
+            chunk[i] = line[i % line.length];
+        }
+        return chunk;
+    }
+
+    static void emit(byte[] chunk, long totalBytes, OutputStream output) throws IOException {
+        for (long written = 0; written < totalBytes; written += chunk.length) {
+            output.write(chunk, 0, chunk.length);
+        }
+    }
+}
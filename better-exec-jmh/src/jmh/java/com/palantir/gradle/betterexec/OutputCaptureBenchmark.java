@@ -0,0 +1,107 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The sinks an attempt's output flows through, set up the same way as {@code BetterExecRunner} does per attempt. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:VisibilityModifier") // JMH sets the @Param fields directly
+public class OutputCaptureBenchmark {
+    public enum CaptureMode {
+        FULL,
+        HEAD_AND_TAIL,
+        HEAD_AND_TAIL_IN_TEMP_FILE
+    }
+
+    @Param({"FULL", "HEAD_AND_TAIL", "HEAD_AND_TAIL_IN_TEMP_FILE"})
+    public CaptureMode captureMode;
+
+    @Param({"128", "8192"})
+    public int chunkBytes;
+
+    @Param("16")
+    public int outputMib;
+
+    private byte[] chunk;
+    private File logFile;
+
+    @Setup
+    public final void before() throws IOException {
+        chunk = FakeProcessOutput.chunk(chunkBytes);
+        logFile = File.createTempFile("better-exec-jmh", ".log");
+    }
+
+    @TearDown
+    public final void after() {
+        logFile.delete();
+    }
+
+    @Benchmark
+    public final String captureOneAttempt() throws IOException {
+        OutputCapture inMemoryOutput = capture();
+        StreamingRetryMatcher retryMatcher = new StreamingRetryMatcher(
+                SerializableOrSpec.<String>empty().or(line -> line.startsWith("Connection reset")),
+                SubstringAutomaton.of(List.of("Could not resolve", "OutOfMemoryError")));
+
+        try (OutputStream logOutput = new PeriodicallyFlushingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(logFile)), Duration.ofSeconds(1))) {
+            OutputStream processOutput = new FanOutOutputStream(List.of(inMemoryOutput, logOutput, retryMatcher));
+            FakeProcessOutput.emit(chunk, (long) outputMib * 1024 * 1024, processOutput);
+            processOutput.flush();
+        }
+
+        retryMatcher.finish();
+        try (inMemoryOutput) {
+            return inMemoryOutput.contents();
+        }
+    }
+
+    private OutputCapture capture() {
+        switch (captureMode) {
+            case FULL:
+                return new FullOutputCapture();
+            case HEAD_AND_TAIL:
+                return new HeadAndTailOutputCapture(64 * 1024, 256 * 1024);
+            default:
+                return FileBackedOutputCapture.headAndTail(64 * 1024, 256 * 1024);
+        }
+    }
+}
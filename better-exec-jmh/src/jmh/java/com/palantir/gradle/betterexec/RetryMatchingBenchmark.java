@@ -0,0 +1,98 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking for retry conditions in output that does not contain any of them, which is the common case and means
+ * every byte has to be looked at.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("checkstyle:VisibilityModifier") // JMH sets the @Param fields directly
+public class RetryMatchingBenchmark {
+    private static final List<String> SUBSTRINGS =
+            List.of("Could not resolve", "OutOfMemoryError", "Connection reset", "503 Service Unavailable");
+    private static final int PIPE_READ_BYTES = 8192;
+
+    @Param({"1", "32"})
+    public int outputMib;
+
+    private byte[] outputBytes;
+    private SerializableOrSpec<String> retryWhen;
+    private SerializableOrSpec<String> retryWhenAnyLine;
+    private SubstringAutomaton retryWhenOutputContains;
+
+    @Setup
+    public final void before() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FakeProcessOutput.emit(FakeProcessOutput.chunk(PIPE_READ_BYTES), (long) outputMib * 1024 * 1024, output);
+        outputBytes = output.toByteArray();
+
+        retryWhen = SerializableOrSpec.empty();
+        retryWhenAnyLine = SerializableOrSpec.empty();
+        for (String substring : SUBSTRINGS) {
+            retryWhen.or(text -> text.contains(substring));
+            retryWhenAnyLine.or(line -> line.contains(substring));
+        }
+        retryWhenOutputContains = SubstringAutomaton.of(SUBSTRINGS);
+    }
+
+    /** Includes decoding the output, which {@code retryWhen} cannot do without. */
+    @Benchmark
+    public final boolean retryWhenPredicates() {
+        return retryWhen.isSatisfiedBy(new String(outputBytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public final boolean retryWhenAnyLine() {
+        LineMatchingOutputStream matcher = new LineMatchingOutputStream(retryWhenAnyLine);
+        for (int off = 0; off < outputBytes.length; off += PIPE_READ_BYTES) {
+            matcher.write(outputBytes, off, Math.min(PIPE_READ_BYTES, outputBytes.length - off));
+        }
+        matcher.finish();
+        return matcher.matched();
+    }
+
+    @Benchmark
+    public final boolean retryWhenOutputContains() {
+        SubstringAutomaton.Scanner scanner = retryWhenOutputContains.scanner();
+        for (int off = 0; off < outputBytes.length; off += PIPE_READ_BYTES) {
+            scanner.scan(outputBytes, off, Math.min(PIPE_READ_BYTES, outputBytes.length - off));
+        }
+        return scanner.matchedSubstring().isPresent();
+    }
+}
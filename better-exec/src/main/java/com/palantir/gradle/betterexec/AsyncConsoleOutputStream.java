@@ -0,0 +1,170 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes to the console from a background thread, so that a slow terminal never slows down the process writing the
+ * output, or any other task. At most {@link #MAX_QUEUED_BYTES} can be waiting to be written, across every task in the
+ * daemon. Beyond that output is dropped from the console, and replaced by a note saying how much, though it still goes
+ * to the log file.
+ *
+ * <p>Only whole lines are handed over, as every task shares the one writer thread and Gradle buffers console output
+ * per thread until the end of a line. Handing over part of a line would splice it together with other tasks' lines.
+ */
+final class AsyncConsoleOutputStream extends OutputStream {
+    private static final int MAX_QUEUED_BYTES = 1024 * 1024;
+    private static final int MAX_PARTIAL_LINE_BYTES = 64 * 1024;
+    private static final Duration MAX_WAIT_FOR_CONSOLE_ON_FINISH = Duration.ofSeconds(1);
+
+    private static final ExecutorService CONSOLE_WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "better-exec-console-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Shared as there is only the one writer thread, so a single budget bounds the memory it can hold on to. */
+    private static final AtomicLong QUEUED_BYTES = new AtomicLong();
+
+    private final OutputStream console;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private long droppedBytes = 0;
+
+    AsyncConsoleOutputStream(OutputStream console) {
+        this.console = console;
+    }
+
+    @Override
+    public synchronized void write(int byteValue) {
+        partialLine.write(byteValue);
+        if ((byte) byteValue == '\n' || partialLine.size() >= MAX_PARTIAL_LINE_BYTES) {
+            handOverPartialLine();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int off, int len) {
+        int lastNewline = lastNewline(bytes, off, len);
+        if (lastNewline < 0) {
+            partialLine.write(bytes, off, len);
+            if (partialLine.size() >= MAX_PARTIAL_LINE_BYTES) {
+                handOverPartialLine();
+            }
+            return;
+        }
+
+        partialLine.write(bytes, off, lastNewline + 1 - off);
+        handOverPartialLine();
+        partialLine.write(bytes, lastNewline + 1, off + len - lastNewline - 1);
+    }
+
+    /** Does not wait for the console, as the process output is flushed after every read while the process runs. */
+    @Override
+    public void flush() {}
+
+    /**
+     * Hands over whatever is left once the process has exited, and gives the console a moment to catch up so that its
+     * output mostly comes before whatever is logged about the attempt.
+     */
+    void finish() throws IOException {
+        synchronized (this) {
+            handOverPartialLine();
+            if (droppedBytes > 0) {
+                handOver(droppedNotice());
+            }
+        }
+
+        try {
+            CONSOLE_WRITER
+                    .submit(() -> {
+                        console.flush();
+                        return null;
+                    })
+                    .get(MAX_WAIT_FOR_CONSOLE_ON_FINISH.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The console is slow, the rest of the output will show up when it gets to it
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to flush console", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for console", e);
+        }
+    }
+
+    private void handOverPartialLine() {
+        if (partialLine.size() == 0) {
+            return;
+        }
+
+        byte[] chunk = partialLine.toByteArray();
+        partialLine.reset();
+
+        if (QUEUED_BYTES.get() + chunk.length > MAX_QUEUED_BYTES) {
+            droppedBytes += chunk.length;
+            return;
+        }
+
+        if (droppedBytes > 0) {
+            handOver(droppedNotice());
+        }
+        handOver(chunk);
+    }
+
+    private byte[] droppedNotice() {
+        byte[] notice = String.format(
+                        Locale.ROOT,
+                        "[... %d bytes not shown as the console could not keep up, see the log file for the full "
+                                + "output ...]\n",
+                        droppedBytes)
+                .getBytes(StandardCharsets.UTF_8);
+        droppedBytes = 0;
+        return notice;
+    }
+
+    private void handOver(byte[] chunk) {
+        QUEUED_BYTES.addAndGet(chunk.length);
+        CONSOLE_WRITER.execute(() -> {
+            try {
+                console.write(chunk);
+            } catch (IOException e) {
+                // Nothing useful to do if the console itself is broken, the output is still in the log file
+            } finally {
+                QUEUED_BYTES.addAndGet(-chunk.length);
+            }
+        });
+    }
+
+    private static int lastNewline(byte[] bytes, int off, int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
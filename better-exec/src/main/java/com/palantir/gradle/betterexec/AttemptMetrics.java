@@ -0,0 +1,142 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** What a single attempt at running a command took: how long it ran for and, if known, what resources it used. */
+final class AttemptMetrics implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final double BYTES_PER_MIB = 1024 * 1024;
+
+    private final String taskPath;
+    private final List<String> command;
+    private final int attempt;
+    private final int exitCode;
+    private final Instant startedAt;
+    private final Duration wallTime;
+    private final long stdoutBytes;
+    private final long stderrBytes;
+    private final ResourceUsage resourceUsage;
+
+    AttemptMetrics(
+            String taskPath,
+            List<String> command,
+            int attempt,
+            int exitCode,
+            Instant startedAt,
+            Duration wallTime,
+            long stdoutBytes,
+            long stderrBytes,
+            ResourceUsage resourceUsage) {
+        this.taskPath = taskPath;
+        this.command = List.copyOf(command);
+        this.attempt = attempt;
+        this.exitCode = exitCode;
+        this.startedAt = startedAt;
+        this.wallTime = wallTime;
+        this.stdoutBytes = stdoutBytes;
+        this.stderrBytes = stderrBytes;
+        this.resourceUsage = resourceUsage;
+    }
+
+    String taskPath() {
+        return taskPath;
+    }
+
+    List<String> command() {
+        return command;
+    }
+
+    int attempt() {
+        return attempt;
+    }
+
+    int exitCode() {
+        return exitCode;
+    }
+
+    Instant startedAt() {
+        return startedAt;
+    }
+
+    Duration wallTime() {
+        return wallTime;
+    }
+
+    long stdoutBytes() {
+        return stdoutBytes;
+    }
+
+    long stderrBytes() {
+        return stderrBytes;
+    }
+
+    ResourceUsage resourceUsage() {
+        return resourceUsage;
+    }
+
+    /** One line for people, such as {@code Attempt 1: exit code 0, wall time 1.200s, cpu 0.900s user + ...}. */
+    String summary() {
+        List<String> parts = new ArrayList<>();
+        parts.add("exit code " + exitCode);
+        parts.add("wall time " + seconds(wallTime));
+        if (resourceUsage.cpuUser().isPresent() && resourceUsage.cpuSystem().isPresent()) {
+            parts.add("cpu " + seconds(resourceUsage.cpuUser().get()) + " user + "
+                    + seconds(resourceUsage.cpuSystem().get()) + " system");
+        } else {
+            resourceUsage.cpuTotal().ifPresent(total -> parts.add("cpu " + seconds(total)));
+        }
+        resourceUsage
+                .peakRssBytes()
+                .ifPresent(bytes -> parts.add(String.format(Locale.ROOT, "peak rss %.1f MiB", bytes / BYTES_PER_MIB)));
+        return "Attempt " + attempt + ": " + String.join(", ", parts);
+    }
+
+    /** One line of JSON, leaving out whatever is not known. */
+    String toJson() {
+        List<String> fields = new ArrayList<>();
+        fields.add("\"task\":" + Json.string(taskPath));
+        fields.add("\"command\":" + Json.strings(command));
+        fields.addAll(jsonFields());
+        return "{" + String.join(",", fields) + "}";
+    }
+
+    /** The fields of {@link #toJson()} that describe the attempt rather than what was run. */
+    List<String> jsonFields() {
+        List<String> fields = new ArrayList<>();
+        fields.add("\"attempt\":" + attempt);
+        fields.add("\"exitCode\":" + exitCode);
+        fields.add("\"startedAt\":" + Json.string(startedAt.toString()));
+        fields.add("\"wallTimeMillis\":" + wallTime.toMillis());
+        fields.add("\"stdoutBytes\":" + stdoutBytes);
+        fields.add("\"stderrBytes\":" + stderrBytes);
+        resourceUsage.cpuUser().ifPresent(cpu -> fields.add("\"cpuUserMillis\":" + cpu.toMillis()));
+        resourceUsage.cpuSystem().ifPresent(cpu -> fields.add("\"cpuSystemMillis\":" + cpu.toMillis()));
+        resourceUsage.cpuTotal().ifPresent(cpu -> fields.add("\"cpuTotalMillis\":" + cpu.toMillis()));
+        resourceUsage.peakRssBytes().ifPresent(bytes -> fields.add("\"peakRssBytes\":" + bytes));
+        return fields;
+    }
+
+    private static String seconds(Duration duration) {
+        return String.format(Locale.ROOT, "%.3fs", duration.toNanos() / 1e9);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where the stdout and stderr of a single attempt go. Both are written to the log file and console interleaved, as they
+ * arrive, while the retry conditions are matched against each stream on its own. In memory they share one buffer,
+ * unless {@code separateStderr} gives stderr a buffer of its own so it is not pushed out by a chatty stdout.
+ *
+ * <p>If any {@link OutputParser}s are set, each line is also parsed as it arrives, so a failure can list just the errors
+ * found instead of all the output.
+ *
+ * <p>Alternatively, the process can write its output straight to the log file itself, when nothing else needs to see
+ * it as it arrives, which {@link #canBeRedirected} checks.
+ *
+ * <p>The output is only decoded into a string if something asks for it, which on success nothing does, and then only
+ * once however many things ask.
+ */
+final class AttemptOutput implements Closeable {
+    private final Optional<OutputCapture> stdoutCapture;
+    private final Optional<OutputCapture> separateStderrCapture;
+    private final StreamingRetryMatcher stdoutRetryMatcher;
+    private final StreamingRetryMatcher stderrRetryMatcher;
+    private final OutputEventCollector events;
+    private final LineSplittingOutputStream stdoutEvents;
+    private final LineSplittingOutputStream stderrEvents;
+    private final Optional<AsyncConsoleOutputStream> console;
+    private final Optional<RedirectedOutput> redirected;
+    private final ByteCounter stdoutBytes = new ByteCounter();
+    private final ByteCounter stderrBytes = new ByteCounter();
+    private final OutputStream stdout;
+    private final OutputStream stderr;
+    private Optional<String> decodedStdout = Optional.empty();
+    private Optional<String> decodedSeparateStderr = Optional.empty();
+
+    private AttemptOutput(BetterExecWorkParams params, OutputStream logFileOutput) {
+        boolean inTempFile = params.getCaptureOutputInTempFile().get();
+        OutputCapture capture =
+                OutputCapture.create(inTempFile, params.getCapturedOutputHeadKib(), params.getCapturedOutputTailKib());
+        this.stdoutCapture = Optional.of(capture);
+        this.separateStderrCapture = params.getSeparateStderr().get()
+                ? Optional.of(OutputCapture.create(
+                        inTempFile, params.getCapturedStderrHeadKib(), params.getCapturedStderrTailKib()))
+                : Optional.empty();
+        this.stdoutRetryMatcher = retryMatcher(params, OutputChannel.STDOUT);
+        this.stderrRetryMatcher = retryMatcher(params, OutputChannel.STDERR);
+        this.events = new OutputEventCollector(params.getOutputParsers().get());
+        this.stdoutEvents = events.channel();
+        this.stderrEvents = events.channel();
+
+        this.console = params.getShowRealTimeLogs().get()
+                ? Optional.of(new AsyncConsoleOutputStream(System.out))
+                : Optional.empty();
+
+        Object lock = new Object();
+        this.stdout = channel(lock, capture, logFileOutput, stdoutRetryMatcher, stdoutEvents, stdoutBytes);
+        this.stderr = channel(
+                lock,
+                separateStderrCapture.orElse(capture),
+                logFileOutput,
+                stderrRetryMatcher,
+                stderrEvents,
+                stderrBytes);
+        this.redirected = Optional.empty();
+    }
+
+    /** Nothing is captured: the output is read back from the file the process wrote it to. */
+    private AttemptOutput(BetterExecWorkParams params, RedirectedOutput redirected) {
+        this.stdoutCapture = Optional.empty();
+        this.separateStderrCapture = Optional.empty();
+        this.stdoutRetryMatcher = retryMatcher(params, OutputChannel.STDOUT);
+        this.stderrRetryMatcher = retryMatcher(params, OutputChannel.STDERR);
+        this.events = new OutputEventCollector(List.of());
+        this.stdoutEvents = events.channel();
+        this.stderrEvents = events.channel();
+        this.console = Optional.empty();
+        this.stdout = OutputStream.nullOutputStream();
+        this.stderr = OutputStream.nullOutputStream();
+        this.redirected = Optional.of(redirected);
+    }
+
+    static AttemptOutput create(BetterExecWorkParams params, OutputStream logFileOutput) {
+        return new AttemptOutput(params, logFileOutput);
+    }
+
+    /**
+     * For a process that appends its stdout and stderr to the log file itself, or a temp file if there is no log file.
+     * Anything written to the log file before the attempt must have been flushed.
+     */
+    static AttemptOutput redirectedTo(BetterExecWorkParams params, Optional<File> logFile) {
+        return new AttemptOutput(
+                params,
+                RedirectedOutput.create(logFile, params.getCapturedOutputHeadKib(), params.getCapturedOutputTailKib()));
+    }
+
+    /** True if nothing needs to see the output as it arrives, so the process can write it to a file itself. */
+    static boolean canBeRedirected(BetterExecWorkParams params) {
+        return !params.getShowRealTimeLogs().get()
+                && !params.getSeparateStderr().get()
+                && params.getOutputParsers().get().isEmpty()
+                && params.getRetryWhen().get().isEmpty()
+                && retryMatcher(params, OutputChannel.STDOUT).isEmpty()
+                && retryMatcher(params, OutputChannel.STDERR).isEmpty();
+    }
+
+    /** Where the process should append its output, if it writes it itself. */
+    Optional<File> redirectTarget() {
+        return redirected.map(RedirectedOutput::file);
+    }
+
+    OutputStream stdout() {
+        return stdout;
+    }
+
+    OutputStream stderr() {
+        return stderr;
+    }
+
+    /** Called once the process has exited and all of its output has been written. */
+    void finish() throws IOException {
+        redirected.ifPresent(RedirectedOutput::processExited);
+        stdout.flush();
+        stderr.flush();
+        stdoutRetryMatcher.finish();
+        stderrRetryMatcher.finish();
+        stdoutEvents.finish();
+        stderrEvents.finish();
+        if (console.isPresent()) {
+            console.get().finish();
+        }
+    }
+
+    /** Stderr is counted as stdout when the process writes both to the same file. */
+    long stdoutBytes() {
+        return redirected.map(RedirectedOutput::size).orElse(stdoutBytes.count);
+    }
+
+    long stderrBytes() {
+        return stderrBytes.count;
+    }
+
+    Optional<String> streamingRetryReason() {
+        return stdoutRetryMatcher.retryReason().or(stderrRetryMatcher::retryReason);
+    }
+
+    /** What {@code retryWhen} predicates are given to match against. */
+    String forRetryWhen() {
+        return separateStderrCapture.isPresent() ? decodedStdout() + "\n" + decodedSeparateStderr() : decodedStdout();
+    }
+
+    /** Just the errors the output parsers found, if they found any, otherwise the output as captured. */
+    String forFailureMessage() {
+        if (events.foundErrors()) {
+            return events.describeErrors();
+        }
+        return separateStderrCapture.isPresent()
+                ? "Stdout:\n\n" + decodedStdout() + "\n\nStderr:\n\n" + decodedSeparateStderr()
+                : "Output:\n\n" + decodedStdout();
+    }
+
+    private String decodedStdout() {
+        if (decodedStdout.isEmpty()) {
+            decodedStdout = Optional.of(
+                    redirected.isPresent()
+                            ? redirected.get().contents()
+                            : stdoutCapture.get().contents());
+        }
+        return decodedStdout.get();
+    }
+
+    private String decodedSeparateStderr() {
+        if (decodedSeparateStderr.isEmpty()) {
+            decodedSeparateStderr = Optional.of(separateStderrCapture.get().contents());
+        }
+        return decodedSeparateStderr.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stdoutCapture.isPresent()) {
+            stdoutCapture.get().close();
+        }
+        if (redirected.isPresent()) {
+            redirected.get().close();
+        }
+        if (separateStderrCapture.isPresent()) {
+            separateStderrCapture.get().close();
+        }
+    }
+
+    private static StreamingRetryMatcher retryMatcher(BetterExecWorkParams params, OutputChannel channel) {
+        return new StreamingRetryMatcher(
+                params.getRetryWhenLine().getting(channel).get(),
+                params.getRetryWhenOutputContains().getting(channel).get());
+    }
+
+    private OutputStream channel(
+            Object lock,
+            OutputCapture capture,
+            OutputStream logFileOutput,
+            StreamingRetryMatcher retryMatcher,
+            LineSplittingOutputStream eventParser,
+            ByteCounter byteCounter) {
+        // Tee into the log file as the bytes arrive, rather than once the process has finished, so a long-running
+        // process has its log on disk even if the daemon dies before it exits.
+        List<OutputStream> sinks = new ArrayList<>(List.of(capture, logFileOutput, byteCounter));
+        if (!retryMatcher.isEmpty()) {
+            sinks.add(retryMatcher);
+        }
+        if (!events.isEmpty()) {
+            sinks.add(eventParser);
+        }
+        console.ifPresent(sinks::add);
+        return new FanOutOutputStream(lock, sinks);
+    }
+
+    /** Only written to under the lock the channels share, and only read once they have been flushed for good. */
+    private static final class ByteCounter extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int byteValue) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips into a file on a background thread, so the thread pumping the output of the process only copies bytes rather
+ * than compressing them. Writes are gathered into chunks and handed over once full, or on flush. If compressing falls
+ * more than {@link #MAX_QUEUED_CHUNKS} chunks behind, writes wait for it to catch up rather than dropping any of the
+ * log.
+ */
+final class BackgroundGzipOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_QUEUED_CHUNKS = 128;
+    private static final long ENQUEUE_RECHECK_MILLIS = 100;
+    private static final byte[] FLUSH = new byte[0];
+    private static final byte[] CLOSE = new byte[0];
+
+    private static final ExecutorService COMPRESSORS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "better-exec-log-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+    private final CompletableFuture<Void> compressed;
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength = 0;
+    private boolean closed = false;
+
+    BackgroundGzipOutputStream(File file) throws IOException {
+        // Sync flushing, so that what has been flushed can be decompressed even if the daemon dies before closing
+        GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(file), CHUNK_SIZE, true);
+        this.compressed = CompletableFuture.runAsync(() -> compress(gzip), COMPRESSORS);
+    }
+
+    @Override
+    public void write(int byteValue) throws IOException {
+        if (chunkLength == CHUNK_SIZE) {
+            handOverChunk();
+        }
+        chunk[chunkLength++] = (byte) byteValue;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        int written = 0;
+        while (written < len) {
+            if (chunkLength == CHUNK_SIZE) {
+                handOverChunk();
+            }
+            int toCopy = Math.min(len - written, CHUNK_SIZE - chunkLength);
+            System.arraycopy(bytes, off + written, chunk, chunkLength, toCopy);
+            chunkLength += toCopy;
+            written += toCopy;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        handOverChunk();
+        enqueue(FLUSH);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        handOverChunk();
+        enqueue(CLOSE);
+        try {
+            compressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the log to be compressed", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress the log", e.getCause());
+        }
+    }
+
+    private void handOverChunk() throws IOException {
+        if (chunkLength == 0) {
+            return;
+        }
+
+        enqueue(chunkLength == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, chunkLength));
+        chunk = new byte[CHUNK_SIZE];
+        chunkLength = 0;
+    }
+
+    private void enqueue(byte[] item) throws IOException {
+        try {
+            while (!chunks.offer(item, ENQUEUE_RECHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (compressed.isDone()) {
+                    // Compressing failed, which close() reports, so there is nothing to wait for
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the log to be compressed", e);
+        }
+    }
+
+    private void compress(GZIPOutputStream gzip) {
+        try (gzip) {
+            while (true) {
+                byte[] item = chunks.take();
+                if (item == CLOSE) {
+                    return;
+                } else if (item == FLUSH) {
+                    gzip.flush();
+                } else {
+                    gzip.write(item);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compressing the log", e);
+        }
+    }
+}
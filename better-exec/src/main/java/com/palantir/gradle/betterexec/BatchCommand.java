@@ -0,0 +1,57 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Optional;
+
+/** One command of a {@link BetterExecBatch}, along with where its output goes. */
+final class BatchCommand implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+    private final List<String> command;
+    // Whether there is a log file at all, with logFile then just a placeholder, since Optional cannot be serialized
+    private final boolean hasLogFile;
+    private final File logFile;
+    private final String circleArtifactsUrlLocation;
+
+    BatchCommand(int index, List<String> command, Optional<File> logFile, String circleArtifactsUrlLocation) {
+        this.index = index;
+        this.command = List.copyOf(command);
+        this.hasLogFile = logFile.isPresent();
+        this.logFile = logFile.orElseGet(() -> new File(""));
+        this.circleArtifactsUrlLocation = circleArtifactsUrlLocation;
+    }
+
+    int index() {
+        return index;
+    }
+
+    List<String> command() {
+        return command;
+    }
+
+    Optional<File> logFile() {
+        return hasLogFile ? Optional.of(logFile) : Optional.empty();
+    }
+
+    String circleArtifactsUrlLocation() {
+        return circleArtifactsUrlLocation;
+    }
+}
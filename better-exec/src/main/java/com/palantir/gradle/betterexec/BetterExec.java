@@ -20,40 +20,55 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Optional;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.util.Set;
 import javax.inject.Inject;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 import org.gradle.workers.WorkQueue;
 import org.gradle.workers.WorkerExecutor;
 
 public abstract class BetterExec extends DefaultTask implements BetterExecCommon {
 
-    private final SerializableOrSpec<String> retryWhen = SerializableOrSpec.empty();
+    private final RetryConditions retryConditions = new RetryConditions();
+    private final Provider<OutputReplayService> outputReplayService;
 
     @Inject
     protected abstract WorkerExecutor getWorkerExecutor();
 
+    @Inject
+    protected abstract ProjectLayout getProjectLayout();
+
+    @Inject
+    protected abstract BuildEventsListenerRegistry getBuildEventsListenerRegistry();
+
+    @Input
+    public abstract ListProperty<String> getCommand();
+
+    /**
+     * Opt-in: keeps the output of the command, compressed, in this file. As a task output, it is stored in the build
+     * cache along with the other outputs, so if this task is {@link CacheableTask cacheable} its
+     * output is printed again when it is taken from the cache. If it is also the only output of the task, and the task
+     * declares input files, identical commands with identical environment, working dir, stdin and input files (all
+     * relative to the project) are also only run once per build, even by tasks of different projects, with the other
+     * tasks printing the output of the first.
+     */
+    @OutputFile
+    @org.gradle.api.tasks.Optional
+    public abstract RegularFileProperty getCachedOutputLog();
+
     public BetterExec() {
-        getWorkingDir().set(".");
-
-        getCircleLogFilePath()
-                .fileProvider(getProject().provider(() -> EnvironmentVariables.envVarOrFromTestingProperty(
-                                getProject(), "CIRCLE_ARTIFACTS")
-                        .map(circleArtifacts -> Stream.concat(
-                                        Stream.of(""),
-                                        IntStream.iterate(2, i -> i + 1).mapToObj(i -> "." + i))
-                                .map(extra -> new File(
-                                        circleArtifacts, getProject().getName() + "." + getName() + extra + ".log"))
-                                .filter(file -> !file.exists())
-                                .findFirst()
-                                .get())
-                        .orElse(null)));
-
-        getShowRealTimeLogs().set(!isOnCi());
-        getCheckExitStatus().set(true);
-        getMaxRetries().set(getProject().provider(() -> retryWhen.isEmpty() ? 1 : 5));
+        BetterExecTaskSupport.setConventions(this, this, retryConditions);
+        this.outputReplayService =
+                OutputReplayService.register(this, getCachedOutputLog(), getBuildEventsListenerRegistry());
+        usesService(outputReplayService);
     }
 
     @TaskAction
@@ -61,25 +76,61 @@ public abstract class BetterExec extends DefaultTask implements BetterExecCommon
         WorkQueue workQueue = getWorkerExecutor().noIsolation();
 
         workQueue.submit(BetterExecAction.class, params -> {
+            BetterExecTaskSupport.copyParameters(this, retryConditions, getProjectLayout(), params);
             params.getCommand().set(getCommand());
-            params.getWorkingDir().set(getWorkingDir());
-            params.getEnvironment().set(getEnvironment());
-            params.getCustomErrorMessage().set(getCustomErrorMessage());
-            params.getStdin().set(getStdin());
-            params.getShowRealTimeLogs().set(getShowRealTimeLogs());
-            params.getCheckExitStatus().set(getCheckExitStatus());
-            params.getCircleLogFilePath().set(getCircleLogFilePath());
-            params.getMaxRetries().set(getMaxRetries());
-            params.getShouldIncludeStacktraceForFailure().set(getShouldIncludeStacktraceForFailure());
-
-            params.getRetryWhen().set(retryWhen);
-            params.getIsOnCi().set(isOnCi());
-            params.getCircleArtifactsUrlLocation().set(circleArtifactsLogFileLocation());
+            params.getTaskPath().set(getPath());
+            params.getMemoryEstimatesDir().set(new File(getTemporaryDir(), "memory-estimates"));
+            params.getIsOnCi().set(BetterExecTaskSupport.isOnCi(getProject()));
+            params.getCachedOutputLog().set(getCachedOutputLog());
+            params.getOutputReplayService().set(outputReplayService);
+            if (canBeDeduplicated()) {
+                params.getCommandKey()
+                        .set(CommandKey.of(
+                                getCommand().get(),
+                                getEnvironment().get(),
+                                getProjectLayout()
+                                        .getProjectDirectory()
+                                        .getAsFile()
+                                        .toPath(),
+                                params.getResolvedWorkingDir().get().getAsFile().toPath(),
+                                Optional.ofNullable(getStdin().getOrNull()),
+                                getInputs().getFiles().getAsFileTree()));
+            }
+            params.getCircleArtifactsUrlLocation()
+                    .set(BetterExecTaskSupport.circleArtifactsLogFileLocation(
+                            getProject(),
+                            Optional.ofNullable(
+                                    getCircleLogFilePath().getAsFile().getOrNull())));
         });
     }
 
+    /**
+     * Only a cacheable task has declared everything its command reads, so only then can another task running the same
+     * command on the same inputs stand in for it. Without any input files declared it most likely reads undeclared
+     * sources, such as those of its project. Skipping a command that produces other outputs would leave them missing.
+     */
+    private boolean canBeDeduplicated() {
+        return isCacheable()
+                && !getInputs().getFiles().isEmpty()
+                && getCachedOutputLog().isPresent()
+                && getOutputs()
+                        .getFiles()
+                        .getFiles()
+                        .equals(Set.of(getCachedOutputLog().get().getAsFile()));
+    }
+
+    /** Gradle decorates the task with a subclass, which does not carry the annotation itself. */
+    private boolean isCacheable() {
+        for (Class<?> type = getClass(); type != null; type = type.getSuperclass()) {
+            if (type.isAnnotationPresent(CacheableTask.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public final void retryWhen(SerializablePredicate<String> outputMatcher) {
-        retryWhen.or(outputMatcher);
+        retryConditions.retryWhen(outputMatcher);
     }
 
     /**
@@ -96,40 +147,39 @@ public abstract class BetterExec extends DefaultTask implements BetterExecCommon
                 + "retryWhen need to be Serializable, which Closures made form Gradle groovy scripts cannot be.");
     }
 
-    public final void retryWhenOutputContains(String substring) {
-        retryWhen(output -> output.contains(substring));
+    /**
+     * Retry when any single line of the output matches. Unlike {@link #retryWhen(SerializablePredicate)}, this is
+     * evaluated as the process runs, so the full output never needs to be held in memory to be matched against.
+     */
+    public final void retryWhenAnyLine(SerializablePredicate<String> lineMatcher) {
+        retryConditions.retryWhenAnyLine(lineMatcher);
     }
 
-    private boolean isOnCi() {
-        return EnvironmentVariables.envVarOrFromTestingProperty(getProject(), "CI")
-                .isPresent();
+    /** Like {@link #retryWhenAnyLine(SerializablePredicate)}, but only matches lines of the given output stream. */
+    public final void retryWhenAnyLine(OutputChannel channel, SerializablePredicate<String> lineMatcher) {
+        retryConditions.retryWhenAnyLine(channel, lineMatcher);
     }
 
-    private String circleArtifactsLogFileLocation() {
-        Optional<String> circleWorkflowJobId =
-                EnvironmentVariables.envVarOrFromTestingProperty(getProject(), "CIRCLE_WORKFLOW_JOB_ID");
-        Optional<String> circleNodeIndex =
-                EnvironmentVariables.envVarOrFromTestingProperty(getProject(), "CIRCLE_NODE_INDEX");
-
-        if (!isOnCi()
-                || circleWorkflowJobId.isEmpty()
-                || circleNodeIndex.isEmpty()
-                || !getCircleLogFilePath().isPresent()) {
-            return "";
-        }
+    /**
+     * Retry when the output contains the given substring. All the substrings are looked for together, in a single
+     * pass over the output as it is produced.
+     */
+    public final void retryWhenOutputContains(String substring) {
+        retryConditions.retryWhenOutputContains(substring);
+    }
 
-        String circleHome = EnvironmentVariables.envVarOrFromTestingProperty(getProject(), "CIRCLE_HOME_DIRECTORY")
-                .orElse("/home/circleci/");
-
-        String circleUrl = EnvironmentVariables.envVarOrFromTestingProperty(getProject(), "CIRCLE_BUILD_URL")
-                .map(BetterExec::extractDomain)
-                .orElse("https://<circle_url>");
-        return String.format(
-                "See output at: %s/output/job/%s/artifacts/%s",
-                circleUrl,
-                circleWorkflowJobId.get(),
-                circleNodeIndex.get()
-                        + getCircleLogFilePath().getAsFile().get().toString().replace(circleHome, "/~/"));
+    /** Like {@link #retryWhenOutputContains(String)}, but only looks for the substring in the given output stream. */
+    public final void retryWhenOutputContains(OutputChannel channel, String substring) {
+        retryConditions.retryWhenOutputContains(channel, substring);
+    }
+
+    /**
+     * Never run more than {@code maxConcurrent} tasks tagged with {@code tag} at once, across the whole build. Tasks
+     * held back do not take up a worker, so cheaper tasks carry on running in the meantime. Every task using a tag must
+     * give it the same limit.
+     */
+    public final void limitConcurrency(String tag, int maxConcurrent) {
+        ConcurrencyLimits.limit(this, tag, maxConcurrent);
     }
 
     public static String extractDomain(String url) {
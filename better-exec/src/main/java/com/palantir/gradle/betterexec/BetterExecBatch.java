@@ -0,0 +1,251 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import com.palantir.gradle.failurereports.exceptions.ExceptionWithLogs;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+/**
+ * Runs many commands from a single task, with the same options as {@link BetterExec} applied to each of them. Saves
+ * the per task overhead when a project would otherwise need hundreds of tiny tasks, such as one per source file.
+ *
+ * <p>Every command runs even if others fail, and all the failures are reported together once they have finished.
+ */
+public abstract class BetterExecBatch extends DefaultTask implements BetterExecCommon {
+    private static final String FAILURE_FILE_SUFFIX = ".failure";
+
+    private final RetryConditions retryConditions = new RetryConditions();
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    protected abstract ProjectLayout getProjectLayout();
+
+    @Input
+    public abstract ListProperty<List<String>> getCommands();
+
+    /**
+     * The most commands to run at the same time. By default each command is its own unit of work, so the limit is
+     * only Gradle's {@code --max-workers}.
+     */
+    @Internal
+    @org.gradle.api.tasks.Optional
+    public abstract Property<Integer> getMaxParallelism();
+
+    public BetterExecBatch() {
+        BetterExecTaskSupport.setConventions(this, this, retryConditions);
+    }
+
+    public final void command(List<String> command) {
+        getCommands().add(List.copyOf(command));
+    }
+
+    @TaskAction
+    public final void exec() {
+        List<List<String>> commands = getCommands().get();
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        Optional<File> summaryLogFile =
+                Optional.ofNullable(getCircleLogFilePath().getAsFile().getOrNull());
+        List<BatchCommand> batchCommands = IntStream.range(0, commands.size())
+                .mapToObj(index -> {
+                    Optional<File> logFile = summaryLogFile.map(summary -> commandLogFile(summary, index));
+                    return new BatchCommand(
+                            index,
+                            commands.get(index),
+                            logFile,
+                            BetterExecTaskSupport.circleArtifactsLogFileLocation(getProject(), logFile));
+                })
+                .toList();
+        summaryLogFile.ifPresent(summary -> writeSummary(summary, batchCommands));
+
+        File failuresDir = new File(getTemporaryDir(), "failures");
+        clearDir(failuresDir);
+        File claimsDir = new File(getTemporaryDir(), "claims");
+        clearDir(claimsDir);
+
+        int maxParallelism = getMaxParallelism().getOrElse(commands.size());
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1, but was " + maxParallelism);
+        }
+
+        // Each lane runs one command at a time, so there are never more than this many running at once. Lanes claim
+        // the next command as they become free, so one slow command does not hold up the ones behind it
+        int lanes = Math.min(maxParallelism, commands.size());
+        WorkQueue workQueue = getWorkerExecutor().noIsolation();
+        for (int lane = 0; lane < lanes; lane++) {
+            workQueue.submit(BetterExecBatchAction.class, params -> {
+                BetterExecTaskSupport.copyParameters(this, retryConditions, getProjectLayout(), params);
+                params.getTaskPath().set(getPath());
+                params.getMemoryEstimatesDir().set(new File(getTemporaryDir(), "memory-estimates"));
+                params.getIsOnCi().set(BetterExecTaskSupport.isOnCi(getProject()));
+                params.getBatchCommands().set(batchCommands);
+                params.getFailuresDir().set(failuresDir);
+                params.getClaimsDir().set(claimsDir);
+            });
+        }
+        workQueue.await();
+
+        List<CommandFailure> failures = readFailures(failuresDir);
+        if (!failures.isEmpty()) {
+            throw failure(commands.size(), failures);
+        }
+    }
+
+    public final void retryWhen(SerializablePredicate<String> outputMatcher) {
+        retryConditions.retryWhen(outputMatcher);
+    }
+
+    /** See {@link BetterExec#retryWhenAnyLine(SerializablePredicate)}. */
+    public final void retryWhenAnyLine(SerializablePredicate<String> lineMatcher) {
+        retryConditions.retryWhenAnyLine(lineMatcher);
+    }
+
+    /** See {@link BetterExec#retryWhenAnyLine(OutputChannel, SerializablePredicate)}. */
+    public final void retryWhenAnyLine(OutputChannel channel, SerializablePredicate<String> lineMatcher) {
+        retryConditions.retryWhenAnyLine(channel, lineMatcher);
+    }
+
+    /** See {@link BetterExec#retryWhenOutputContains(String)}. */
+    public final void retryWhenOutputContains(String substring) {
+        retryConditions.retryWhenOutputContains(substring);
+    }
+
+    /** See {@link BetterExec#retryWhenOutputContains(OutputChannel, String)}. */
+    public final void retryWhenOutputContains(OutputChannel channel, String substring) {
+        retryConditions.retryWhenOutputContains(channel, substring);
+    }
+
+    /**
+     * See {@link BetterExec#limitConcurrency(String, int)}. This limits the batch as a whole, with
+     * {@link #getMaxParallelism()} limiting its commands.
+     */
+    public final void limitConcurrency(String tag, int maxConcurrent) {
+        ConcurrencyLimits.limit(this, tag, maxConcurrent);
+    }
+
+    private ExceptionWithLogs failure(int commandCount, List<CommandFailure> failures) {
+        String header = String.format(
+                Locale.ROOT,
+                "%d of %d commands failed:\n%s",
+                failures.size(),
+                commandCount,
+                failures.stream()
+                        .map(failure -> "  " + failure.command() + ": "
+                                + failure.header().lines().findFirst().orElse(""))
+                        .collect(Collectors.joining("\n")));
+
+        String output = failures.stream()
+                .map(failure -> String.join("\n", "> " + failure.command(), failure.header(), failure.output()))
+                .collect(Collectors.joining("\n\n"));
+
+        return new ExceptionWithLogs(
+                header, output, getShouldIncludeStacktraceForFailure().getOrElse(true));
+    }
+
+    static File failureFile(File failuresDir, int index) {
+        return new File(failuresDir, index + FAILURE_FILE_SUFFIX);
+    }
+
+    private File commandLogFile(File summaryLogFile, int index) {
+        String extension = ".log" + getLogCompression().get().fileSuffix();
+        String name = summaryLogFile.getName();
+        String baseName = name.endsWith(extension) ? name.substring(0, name.length() - extension.length()) : name;
+        return new File(summaryLogFile.getParentFile(), baseName + ".command-" + (index + 1) + extension);
+    }
+
+    /** Also claims the summary log file's name, so that the next run of this task picks new names for its logs. */
+    private void writeSummary(File summaryLogFile, List<BatchCommand> batchCommands) {
+        String summary = batchCommands.stream()
+                .map(batchCommand -> batchCommand.command() + " -> "
+                        + batchCommand.logFile().get().getName())
+                .collect(Collectors.joining(
+                        "\n", "Ran " + batchCommands.size() + " commands, each logging to its own file:\n", "\n"));
+        try {
+            summaryLogFile.getParentFile().mkdirs();
+            try (OutputStream output = summaryLogOutput(summaryLogFile)) {
+                output.write(summary.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write " + summaryLogFile, e);
+        }
+    }
+
+    private OutputStream summaryLogOutput(File summaryLogFile) throws IOException {
+        OutputStream fileOutput = Files.newOutputStream(summaryLogFile.toPath());
+        return getLogCompression().get() == LogCompression.GZIP ? new GZIPOutputStream(fileOutput) : fileOutput;
+    }
+
+    private static void clearDir(File dir) {
+        dir.mkdirs();
+        File[] staleFiles = dir.listFiles();
+        for (File staleFile : staleFiles == null ? List.<File>of() : Arrays.asList(staleFiles)) {
+            staleFile.delete();
+        }
+    }
+
+    private static List<CommandFailure> readFailures(File failuresDir) {
+        return failureFiles(failuresDir).stream()
+                .sorted(Comparator.comparingInt(BetterExecBatch::failureIndex))
+                .map(BetterExecBatch::readFailure)
+                .toList();
+    }
+
+    private static List<File> failureFiles(File failuresDir) {
+        File[] files = failuresDir.listFiles((_dir, name) -> name.endsWith(FAILURE_FILE_SUFFIX));
+        return files == null ? List.of() : Arrays.asList(files);
+    }
+
+    private static int failureIndex(File failureFile) {
+        String name = failureFile.getName();
+        return Integer.parseInt(name.substring(0, name.length() - FAILURE_FILE_SUFFIX.length()));
+    }
+
+    private static CommandFailure readFailure(File failureFile) {
+        try (ObjectInputStream input = new ObjectInputStream(new FileInputStream(failureFile))) {
+            return (CommandFailure) input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Could not read " + failureFile, e);
+        }
+    }
+}
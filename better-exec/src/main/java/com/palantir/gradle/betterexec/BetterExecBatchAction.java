@@ -0,0 +1,79 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.inject.Inject;
+import org.gradle.process.ExecOperations;
+import org.gradle.workers.WorkAction;
+
+/**
+ * Runs one lane of a {@link BetterExecBatch}: claims the next command no other lane has taken and runs it, until there
+ * are none left. A failing command does not stop the lane, its failure is written to the failures dir for the task to
+ * report once every lane is done.
+ */
+abstract class BetterExecBatchAction implements WorkAction<BetterExecBatchWorkParams> {
+    // Required so Gradle can make the type with reflection, while still keeping the class package-private
+    @SuppressWarnings("checkstyle:RedundantModifier")
+    public BetterExecBatchAction() {}
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Override
+    public final void execute() {
+        BetterExecRunner runner = new BetterExecRunner(getParameters(), getExecOperations());
+        for (BatchCommand batchCommand : getParameters().getBatchCommands().get()) {
+            if (!claim(batchCommand.index())) {
+                continue;
+            }
+            Optional<CommandFailure> failure = runner.run(
+                    batchCommand.command(), batchCommand.logFile(), batchCommand.circleArtifactsUrlLocation());
+            failure.ifPresent(commandFailure -> writeFailure(batchCommand.index(), commandFailure));
+        }
+    }
+
+    /** Creating a file is atomic, so only the first lane to try gets to run the command. */
+    private boolean claim(int index) {
+        Path claimFile =
+                getParameters().getClaimsDir().get().getAsFile().toPath().resolve(Integer.toString(index));
+        try {
+            Files.createFile(claimFile);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not claim " + claimFile, e);
+        }
+    }
+
+    private void writeFailure(int index, CommandFailure failure) {
+        File failureFile = BetterExecBatch.failureFile(
+                getParameters().getFailuresDir().get().getAsFile(), index);
+        try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(failureFile))) {
+            output.writeObject(failure);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not record failure of " + failure.command(), e);
+        }
+    }
+}
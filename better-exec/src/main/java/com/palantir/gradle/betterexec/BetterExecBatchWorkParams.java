@@ -0,0 +1,28 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+
+interface BetterExecBatchWorkParams extends BetterExecWorkParams {
+    ListProperty<BatchCommand> getBatchCommands();
+
+    DirectoryProperty getFailuresDir();
+
+    /** Where lanes record which commands they have taken, so each command is run by exactly one of them. */
+    DirectoryProperty getClaimsDir();
+}
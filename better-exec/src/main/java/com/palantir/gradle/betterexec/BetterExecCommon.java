@@ -15,18 +15,19 @@
  */
 package com.palantir.gradle.betterexec;
 
+import java.time.Duration;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 
 interface BetterExecCommon {
-    @Input
-    ListProperty<String> getCommand();
-
     @Input
     Property<Object> getWorkingDir();
 
@@ -41,6 +42,14 @@ interface BetterExecCommon {
     @Optional
     Property<String> getStdin();
 
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    RegularFileProperty getStdinFile();
+
+    @Input
+    ListProperty<String> getToolServerCommand();
+
     @Input
     Property<Boolean> getShowRealTimeLogs();
 
@@ -51,10 +60,83 @@ interface BetterExecCommon {
     @Optional
     RegularFileProperty getCircleLogFilePath();
 
+    @Internal
+    Property<LogCompression> getLogCompression();
+
+    @Internal
+    Property<ExecutionEngine> getExecutionEngine();
+
     @Internal
     Property<Integer> getMaxRetries();
 
+    @Internal
+    Property<Boolean> getAbortAndRetryOnMatch();
+
+    @Internal
+    @Optional
+    Property<Duration> getRetryInitialBackoff();
+
+    @Internal
+    Property<Duration> getRetryMaxBackoff();
+
+    @Internal
+    @Optional
+    Property<Duration> getRetryTimeBudget();
+
+    @Internal
+    @Optional
+    Property<Duration> getAttemptTimeout();
+
+    @Internal
+    @Optional
+    Property<Duration> getTotalTimeout();
+
     @Internal
     @Optional
     Property<Boolean> getShouldIncludeStacktraceForFailure();
+
+    @Internal
+    @Optional
+    Property<Integer> getCapturedOutputHeadKib();
+
+    @Internal
+    @Optional
+    Property<Integer> getCapturedOutputTailKib();
+
+    @Internal
+    Property<Boolean> getCaptureOutputInTempFile();
+
+    @Internal
+    Property<Boolean> getSeparateStderr();
+
+    @Internal
+    ListProperty<OutputParser> getOutputParsers();
+
+    @Internal
+    @Optional
+    Property<Integer> getCapturedStderrHeadKib();
+
+    @Internal
+    @Optional
+    Property<Integer> getCapturedStderrTailKib();
+
+    @Internal
+    @Optional
+    RegularFileProperty getMetricsFile();
+
+    @Internal
+    Property<BetterExecReportService> getReportService();
+
+    @Internal
+    @Optional
+    Property<Integer> getMemoryEstimateMib();
+
+    @Internal
+    Property<Boolean> getLearnMemoryEstimate();
+
+    @Internal
+    Property<Integer> getToolServerInstances();
+
+    @Internal
+    Property<ToolServerService> getToolServerService();
 }
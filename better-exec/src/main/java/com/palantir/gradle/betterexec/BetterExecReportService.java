@@ -0,0 +1,86 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Every command run by a better-exec task in the build reports here, and once the build finishes the lot is written
+ * out as an {@link ExecutionReport}. Setting {@link #ENABLED_PROPERTY} to false turns the report off.
+ */
+abstract class BetterExecReportService implements BuildService<BetterExecReportService.Params>, AutoCloseable {
+    static final String ENABLED_PROPERTY = "betterExec.report";
+
+    private static final Logger log = LoggerFactory.getLogger(BetterExecReportService.class);
+
+    private final List<ExecutionRecord> records = new ArrayList<>();
+
+    interface Params extends BuildServiceParameters {
+        DirectoryProperty getReportDir();
+    }
+
+    // Required so Gradle can make the type with reflection, while still keeping the class package-private
+    @SuppressWarnings("checkstyle:RedundantModifier")
+    public BetterExecReportService() {}
+
+    /**
+     * Empty if the report is turned off. The report goes in the root project's build dir, found from its project dir
+     * as the root project itself cannot be looked at from other projects when they are isolated.
+     */
+    static Optional<Provider<BetterExecReportService>> register(Project project) {
+        boolean enabled = Optional.ofNullable(project.findProperty(ENABLED_PROPERTY))
+                .map(Object::toString)
+                .map(Boolean::parseBoolean)
+                .orElse(true);
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        return Optional.of(project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent("betterExecReport", BetterExecReportService.class, spec -> spec.getParameters()
+                        .getReportDir()
+                        .set(project.getIsolated()
+                                .getRootProject()
+                                .getProjectDirectory()
+                                .dir("build/reports/better-exec"))));
+    }
+
+    synchronized void record(ExecutionRecord record) {
+        records.add(record);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        File reportDir = getParameters().getReportDir().get().getAsFile();
+        ExecutionReport.write(reportDir, records);
+        log.info("Wrote the report of {} better-exec command(s) to {}", records.size(), reportDir);
+    }
+}
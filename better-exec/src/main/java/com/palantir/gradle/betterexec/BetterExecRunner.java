@@ -0,0 +1,563 @@
+/*
+ * (c) Copyright 2022 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import com.palantir.platform.OperatingSystem;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a single command to completion, retrying it as configured. Shared by {@link BetterExecAction}, which runs the
+ * one command of a {@link BetterExec} task, and {@link BetterExecBatchAction}, which runs many.
+ */
+final class BetterExecRunner {
+    private static final int INITIAL_ATTEMPT = 1;
+    private static final Duration LOG_FILE_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private static final Logger log = LoggerFactory.getLogger(BetterExecRunner.class);
+
+    private final BetterExecWorkParams params;
+    private final ExecOperations execOperations;
+
+    BetterExecRunner(BetterExecWorkParams params, ExecOperations execOperations) {
+        this.params = params;
+        this.execOperations = execOperations;
+    }
+
+    /** Returns the failure of the last attempt if the command did not succeed within its retries. */
+    Optional<CommandFailure> run(
+            List<String> command, Optional<File> outputLogFile, String circleArtifactsUrlLocation) {
+        if (params.getStdin().isPresent() && params.getStdinFile().isPresent()) {
+            throw new IllegalArgumentException("Only one of stdin and stdinFile can be given");
+        }
+        outputLogFile.ifPresent(file -> file.getParentFile().mkdirs());
+
+        // A tool server is sent the command as is, rather than it being an executable to find
+        List<String> processedCommand =
+                params.getToolServerCommand().get().isEmpty() ? getProcessedCommandLineArgs(command) : command;
+        ExecutionRecorder recorder = new ExecutionRecorder(
+                Optional.ofNullable(params.getReportService().getOrNull()),
+                params.getTaskPath().get(),
+                processedCommand);
+
+        boolean succeeded = false;
+        try {
+            Optional<CommandFailure> failure =
+                    runWithRetries(processedCommand, outputLogFile, circleArtifactsUrlLocation, recorder);
+            succeeded = failure.isEmpty();
+            return failure;
+        } finally {
+            recorder.finish(succeeded);
+        }
+    }
+
+    private Optional<CommandFailure> runWithRetries(
+            List<String> processedCommand,
+            Optional<File> outputLogFile,
+            String circleArtifactsUrlLocation,
+            ExecutionRecorder recorder) {
+        MemoryEstimate memoryEstimate = MemoryEstimate.forCommand(params, processedCommand);
+        try (OutputStream logFileOutput =
+                        outputLogFile.map(this::logFileOutputStream).orElseGet(OutputStream::nullOutputStream);
+                OutputStream cachedLogOutput = Optional.ofNullable(
+                                params.getCachedOutputLog().getAsFile().getOrNull())
+                        .map(BetterExecRunner::cachedOutputLogStream)
+                        .orElseGet(OutputStream::nullOutputStream)) {
+            OutputStream logOutput = new FanOutOutputStream(List.of(logFileOutput, cachedLogOutput));
+            RetryBackoff backoff = RetryBackoff.create(params);
+            Timeouts timeouts = Timeouts.start(params);
+            int lastAttempt = params.getMaxRetries().get() + INITIAL_ATTEMPT;
+            for (int attempt = INITIAL_ATTEMPT; attempt <= lastAttempt; attempt++) {
+                try (Result result = executeCommandOnce(
+                        processedCommand, logOutput, outputLogFile, timeouts, attempt, memoryEstimate)) {
+                    recordMetrics(result.metrics, logOutput);
+                    recorder.attemptFinished(result.metrics);
+                    memoryEstimate.learnFrom(result.metrics);
+                    if (result.successful()) {
+                        return Optional.empty();
+                    }
+
+                    // Checked first, as retryWhen predicates would otherwise decode the output for nothing
+                    Optional<String> retryReason = attempt == lastAttempt ? Optional.empty() : retryReason(result);
+                    if (retryReason.isEmpty()) {
+                        return Optional.of(failure(
+                                processedCommand,
+                                attempt,
+                                result,
+                                result.timeoutDescription(),
+                                circleArtifactsUrlLocation));
+                    }
+
+                    Optional<Duration> maybeRetryDelay = backoff.delayBeforeRetry(attempt);
+                    if (maybeRetryDelay.isEmpty()) {
+                        log.warn(
+                                "Not retrying as the retry time budget of {} would be exceeded",
+                                params.getRetryTimeBudget().get());
+                        return Optional.of(failure(
+                                processedCommand,
+                                attempt,
+                                result,
+                                result.timeoutDescription(),
+                                circleArtifactsUrlLocation));
+                    }
+                    Duration retryDelay = maybeRetryDelay.get();
+
+                    // Waiting out the rest of the total timeout would only leave the next attempt to be killed at once
+                    if (!timeouts.leavesTimeAfter(retryDelay)) {
+                        log.warn(
+                                "Not retrying as the total timeout of {} would be reached first",
+                                timeouts.totalTimeout().get());
+                        return Optional.of(failure(
+                                processedCommand,
+                                attempt,
+                                result,
+                                Optional.of(totalTimeoutReached(timeouts)),
+                                circleArtifactsUrlLocation));
+                    }
+                    recorder.retrying(retryReason.get());
+                    logRetry(logOutput, attempt, retryReason.get(), retryDelay);
+
+                    // The Worker API has no way to hand the worker lease back while waiting, so it is held while
+                    // sleeping. The total timeout may still run out meanwhile, as sleeping can overrun.
+                    Thread.sleep(retryDelay.toMillis());
+                    if (timeouts.totalTimeoutExpired()) {
+                        return Optional.of(failure(
+                                processedCommand,
+                                attempt,
+                                result,
+                                Optional.of(totalTimeoutReached(timeouts)),
+                                circleArtifactsUrlLocation));
+                    }
+                }
+            }
+            throw new IllegalStateException("Unreachable: the last attempt always returns");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private static void logRetry(OutputStream logOutput, int attempt, String retryReason, Duration retryDelay)
+            throws IOException {
+        String retryMessage = String.format(Locale.ROOT, "\n\nRetrying after %d attempt(s) as %s", attempt, retryReason)
+                + (retryDelay.isZero() ? "" : ", waiting " + retryDelay + " first");
+        logOutput.write(retryMessage.getBytes(StandardCharsets.UTF_8));
+        logOutput.flush();
+        log.warn("{}", retryMessage);
+    }
+
+    /** {@code stoppedAs} is the timeout that stopped the command, if one did. */
+    private CommandFailure failure(
+            List<String> processedCommand,
+            int attempt,
+            Result result,
+            Optional<String> stoppedAs,
+            String circleArtifactsUrlLocation) {
+        String header = String.format(
+                Locale.ROOT,
+                "Task failed after %d attempts with exit code %d.%s\n%s",
+                attempt,
+                result.exitCode,
+                stoppedAs.map(timeout -> " Stopped as " + timeout + ".").orElse(""),
+                Optional.ofNullable(params.getCustomErrorMessage().getOrNull()).orElse(""));
+
+        String output = String.join(
+                "\n",
+                result.output.forFailureMessage(),
+                "Command: " + processedCommand,
+                "Working dir: " + params.getWorkingDir().get(),
+                circleArtifactsUrlLocation);
+
+        log.error("{}\n{}", header, output);
+        return new CommandFailure(processedCommand, header, output);
+    }
+
+    private Optional<String> retryReason(Result result) {
+        if (result.timedOut == TimedOut.TOTAL_TIMEOUT) {
+            return Optional.empty();
+        }
+
+        if (result.timedOut == TimedOut.ATTEMPT_TIMEOUT) {
+            return result.timeoutDescription();
+        }
+
+        Optional<String> streamingRetryReason = result.output.streamingRetryReason();
+        if (streamingRetryReason.isPresent()) {
+            return streamingRetryReason.map(reason -> "output matches retryWhen (" + reason + ")");
+        }
+
+        SerializableOrSpec<String> retryWhen = params.getRetryWhen().get();
+        if (!retryWhen.isEmpty() && retryWhen.isSatisfiedBy(result.output.forRetryWhen())) {
+            return Optional.of("output matches retryWhen");
+        }
+
+        return Optional.empty();
+    }
+
+    /** Compressed as it is only read back to be replayed, and is stored in the build cache. */
+    private static OutputStream cachedOutputLogStream(File file) {
+        try {
+            file.getParentFile().mkdirs();
+            return new BackgroundGzipOutputStream(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+
+    private OutputStream logFileOutputStream(File file) {
+        try {
+            OutputStream fileOutput;
+            if (params.getLogCompression().get() == LogCompression.GZIP) {
+                fileOutput = new BackgroundGzipOutputStream(file);
+            } else {
+                // Appended to, so that when a process writes its output to the file itself, it is not overwritten
+                new FileOutputStream(file).close();
+                fileOutput = new BufferedOutputStream(new FileOutputStream(file, true));
+            }
+            return new PeriodicallyFlushingOutputStream(fileOutput, LOG_FILE_FLUSH_INTERVAL);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Could not find file " + file, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+
+    private void recordMetrics(AttemptMetrics metrics, OutputStream logOutput) throws IOException {
+        String summary = metrics.summary();
+        logOutput.write(("\n\n" + summary + "\n").getBytes(StandardCharsets.UTF_8));
+        logOutput.flush();
+        log.info("{}", summary);
+
+        if (params.getMetricsFile().isPresent()) {
+            MetricsFile.append(params.getMetricsFile().get().getAsFile(), metrics);
+        }
+    }
+
+    private Result executeCommandOnce(
+            List<String> processedCommand,
+            OutputStream logOutput,
+            Optional<File> outputLogFile,
+            Timeouts timeouts,
+            int attempt,
+            MemoryEstimate memoryEstimate)
+            throws IOException {
+        AttemptOutput output = attemptOutput(logOutput, outputLogFile);
+        try (MemoryAdmission.Admission admission =
+                MemoryAdmission.shared().admit(memoryEstimate.bytes(), processedCommand.toString())) {
+            Instant startedAt = Instant.now();
+            long startNanos = System.nanoTime();
+
+            Exited exited;
+            try {
+                exited = runAttempt(processedCommand, output, timeouts, memoryEstimate, admission);
+            } finally {
+                // Also when running it failed, so a partial last line, or a note of output dropped from the console,
+                // still shows up
+                output.finish();
+            }
+
+            AttemptMetrics metrics = new AttemptMetrics(
+                    params.getTaskPath().get(),
+                    processedCommand,
+                    attempt,
+                    exited.exitCode,
+                    startedAt,
+                    Duration.ofNanos(System.nanoTime() - startNanos),
+                    output.stdoutBytes(),
+                    output.stderrBytes(),
+                    exited.resourceUsage);
+            return new Result(exited.exitCode, exited.stoppedEarly, exited.timedOut, timeouts, output, metrics);
+        }
+    }
+
+    private Exited runAttempt(
+            List<String> processedCommand,
+            AttemptOutput output,
+            Timeouts timeouts,
+            MemoryEstimate memoryEstimate,
+            MemoryAdmission.Admission admission)
+            throws IOException {
+        if (!params.getToolServerCommand().get().isEmpty()) {
+            return runOnToolServer(processedCommand, output, timeouts);
+        } else if (needsDirectProcess(timeouts, memoryEstimate)) {
+            return runDirectProcess(processedCommand, output, timeouts, admission);
+        }
+        return new Exited(
+                execWithExecOperations(processedCommand, output), false, TimedOut.NO, ResourceUsage.unknown());
+    }
+
+    private Exited runDirectProcess(
+            List<String> processedCommand, AttemptOutput output, Timeouts timeouts, MemoryAdmission.Admission admission)
+            throws IOException {
+        DirectProcess process = startDirectProcess(processedCommand, output, abortWhen(output));
+        ProcessTreeSampler sampler = ProcessTreeSampler.start(process.toHandle());
+        admission.trackUsage(sampler::currentRssBytes);
+        int exitCode = process.waitFor(timeouts.forNextAttempt());
+        ResourceUsage resourceUsage = sampler.stop();
+        return new Exited(exitCode, process.wasDestroyed(), timedOut(process.timedOut(), timeouts), resourceUsage);
+    }
+
+    /**
+     * The server is shared by many commands over its life, so neither its resource usage nor its memory can be put
+     * down to any one of them.
+     */
+    private Exited runOnToolServer(List<String> processedCommand, AttemptOutput output, Timeouts timeouts)
+            throws IOException {
+        if (params.getStdin().isPresent() || params.getStdinFile().isPresent()) {
+            throw new IllegalArgumentException(
+                    "stdin cannot be given to commands run on a tool server, as its stdin carries the commands");
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder(getProcessedCommandLineArgs(
+                        params.getToolServerCommand().get()))
+                .directory(params.getResolvedWorkingDir().get().getAsFile());
+        processBuilder.environment().putAll(params.getEnvironment().get());
+
+        ToolServerService toolServers = params.getToolServerService().get();
+        ToolServer server;
+        try {
+            server = toolServers.acquire(
+                    processBuilder, params.getToolServerInstances().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a tool server", e);
+        }
+
+        try {
+            ToolServer.RunningCommand command =
+                    server.send(processedCommand, output.stdout(), output.stderr(), abortWhen(output));
+            int exitCode = command.waitFor(timeouts.forNextAttempt());
+            return new Exited(
+                    exitCode, command.stoppedEarly(), timedOut(command.timedOut(), timeouts), ResourceUsage.unknown());
+        } finally {
+            toolServers.release(server);
+        }
+    }
+
+    private BooleanSupplier abortWhen(AttemptOutput output) {
+        return () -> params.getAbortAndRetryOnMatch().get()
+                && output.streamingRetryReason().isPresent();
+    }
+
+    private static TimedOut timedOut(boolean timedOut, Timeouts timeouts) {
+        if (!timedOut) {
+            return TimedOut.NO;
+        }
+        return timeouts.totalTimeoutExpired() ? TimedOut.TOTAL_TIMEOUT : TimedOut.ATTEMPT_TIMEOUT;
+    }
+
+    private AttemptOutput attemptOutput(OutputStream logOutput, Optional<File> outputLogFile) throws IOException {
+        if (!redirectsOutputToFile()) {
+            return AttemptOutput.create(params, logOutput);
+        }
+
+        // The process appends to the log file after everything written to it so far
+        logOutput.flush();
+        return AttemptOutput.redirectedTo(params, outputLogFile);
+    }
+
+    /**
+     * The process can only write its output to the log file itself if nothing else needs it, otherwise it is run as
+     * with {@link ExecutionEngine#PROCESS_BUILDER}.
+     */
+    private boolean redirectsOutputToFile() {
+        return params.getExecutionEngine().get() == ExecutionEngine.REDIRECT_TO_FILE
+                && params.getToolServerCommand().get().isEmpty()
+                && params.getLogCompression().get() == LogCompression.NONE
+                && !params.getCachedOutputLog().isPresent()
+                && AttemptOutput.canBeRedirected(params);
+    }
+
+    /**
+     * {@link ExecOperations} gives no handle on the process, so some features need to start it themselves. Without a
+     * handle, the metrics of an attempt are only its wall time, and the memory it uses cannot be tracked. Nor can a
+     * stdin file be handed to the process to read itself: {@link ExecOperations} copies it through the JVM.
+     */
+    private boolean needsDirectProcess(Timeouts timeouts, MemoryEstimate memoryEstimate) {
+        return params.getExecutionEngine().get() != ExecutionEngine.EXEC_OPERATIONS
+                || params.getAbortAndRetryOnMatch().get()
+                || !timeouts.isEmpty()
+                || params.getMetricsFile().isPresent()
+                || memoryEstimate.isEnabled()
+                || params.getStdinFile().isPresent();
+    }
+
+    private int execWithExecOperations(List<String> processedCommand, AttemptOutput output) {
+        ExecResult execResult = execOperations.exec(execSpec -> {
+            execSpec.setIgnoreExitValue(true);
+            execSpec.commandLine(processedCommand);
+            execSpec.workingDir(params.getWorkingDir());
+            execSpec.environment(params.getEnvironment().get());
+            execSpec.setStandardOutput(output.stdout());
+            execSpec.setErrorOutput(output.stderr());
+
+            if (params.getStdin().isPresent()) {
+                execSpec.setStandardInput(
+                        new ByteArrayInputStream(params.getStdin().get().getBytes(StandardCharsets.UTF_8)));
+            }
+        });
+
+        return execResult.getExitValue();
+    }
+
+    private DirectProcess startDirectProcess(
+            List<String> processedCommand, AttemptOutput output, BooleanSupplier destroyWhen) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(processedCommand)
+                .directory(params.getResolvedWorkingDir().get().getAsFile());
+        processBuilder.environment().putAll(params.getEnvironment().get());
+        output.redirectTarget().ifPresent(file -> processBuilder
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(file)));
+        // The process reads the file itself, so it is never held in the heap, nor even copied through the JVM, and
+        // is opened afresh for each attempt
+        if (params.getStdinFile().isPresent()) {
+            processBuilder.redirectInput(params.getStdinFile().get().getAsFile());
+        }
+
+        Optional<byte[]> stdin =
+                Optional.ofNullable(params.getStdin().getOrNull()).map(value -> value.getBytes(StandardCharsets.UTF_8));
+
+        return DirectProcess.start(
+                processBuilder,
+                stdin,
+                output.stdout(),
+                output.stderr(),
+                destroyWhen,
+                params.getExecutionEngine().get() != ExecutionEngine.EXEC_OPERATIONS);
+    }
+
+    /**
+     * Workaround for https://github.com/gradle/gradle/issues/10483. If the command is not a relative/absolute path,
+     * find the full path of the executable (using the PATH env var) and pass it to the execSpec.
+     */
+    private List<String> getProcessedCommandLineArgs(List<String> commandLineArgs) {
+        if (!OperatingSystem.get().equals(OperatingSystem.MACOS)) {
+            return commandLineArgs;
+        }
+
+        if (commandLineArgs.isEmpty()) {
+            return commandLineArgs;
+        }
+
+        if (commandLineArgs.get(0).startsWith("./")
+                || commandLineArgs.get(0).startsWith("../")
+                || commandLineArgs.get(0).startsWith("/")) {
+            return commandLineArgs;
+        }
+
+        String command = commandLineArgs.get(0);
+
+        Optional<Path> commandPath = CommandPathCache.resolve(System.getenv("PATH"), command);
+        return commandPath
+                .map(path -> Stream.concat(
+                                Stream.of(path.toAbsolutePath().toString()),
+                                commandLineArgs.subList(1, commandLineArgs.size()).stream())
+                        .toList())
+                .orElse(commandLineArgs);
+    }
+
+    private static String totalTimeoutReached(Timeouts timeouts) {
+        return "the total timeout of " + timeouts.totalTimeout().get() + " was reached";
+    }
+
+    private enum TimedOut {
+        NO,
+        ATTEMPT_TIMEOUT,
+        TOTAL_TIMEOUT
+    }
+
+    /** How the process of a single attempt ended, however it was run. */
+    private static final class Exited {
+        private final int exitCode;
+        private final boolean stoppedEarly;
+        private final TimedOut timedOut;
+        private final ResourceUsage resourceUsage;
+
+        Exited(int exitCode, boolean stoppedEarly, TimedOut timedOut, ResourceUsage resourceUsage) {
+            this.exitCode = exitCode;
+            this.stoppedEarly = stoppedEarly;
+            this.timedOut = timedOut;
+            this.resourceUsage = resourceUsage;
+        }
+    }
+
+    private final class Result implements Closeable {
+        private final int exitCode;
+        private final boolean stoppedEarly;
+        private final TimedOut timedOut;
+        private final Timeouts timeouts;
+        private final AttemptOutput output;
+        private final AttemptMetrics metrics;
+
+        Result(
+                int exitCode,
+                boolean stoppedEarly,
+                TimedOut timedOut,
+                Timeouts timeouts,
+                AttemptOutput output,
+                AttemptMetrics metrics) {
+            this.exitCode = exitCode;
+            this.stoppedEarly = stoppedEarly;
+            this.timedOut = timedOut;
+            this.timeouts = timeouts;
+            this.output = output;
+            this.metrics = metrics;
+        }
+
+        Optional<String> timeoutDescription() {
+            switch (timedOut) {
+                case ATTEMPT_TIMEOUT:
+                    return Optional.of("the attempt timed out after "
+                            + timeouts.attemptTimeout().get());
+                case TOTAL_TIMEOUT:
+                    return Optional.of(totalTimeoutReached(timeouts));
+                default:
+                    return Optional.empty();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+
+        public boolean successful() {
+            return !stoppedEarly && (!params.getCheckExitStatus().get() || exitCode == 0);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.provider.Provider;
+
+/** Conventions and parameter plumbing shared by {@link BetterExec} and {@link BetterExecBatch}. */
+final class BetterExecTaskSupport {
+    private BetterExecTaskSupport() {}
+
+    static void setConventions(Task task, BetterExecCommon common, RetryConditions retryConditions) {
+        Project project = task.getProject();
+        common.getWorkingDir().set(".");
+
+        common.getCircleLogFilePath()
+                .fileProvider(project.provider(
+                        () -> EnvironmentVariables.envVarOrFromTestingProperty(project, "CIRCLE_ARTIFACTS")
+                                .map(circleArtifacts -> Stream.concat(
+                                                Stream.of(""),
+                                                IntStream.iterate(2, i -> i + 1).mapToObj(i -> "." + i))
+                                        .map(extra -> new File(
+                                                circleArtifacts,
+                                                project.getName() + "." + task.getName() + extra + ".log"
+                                                        + common.getLogCompression()
+                                                                .get()
+                                                                .fileSuffix()))
+                                        .filter(file -> !file.exists())
+                                        .findFirst()
+                                        .get())
+                                .orElse(null)));
+
+        common.getShowRealTimeLogs().set(!isOnCi(project));
+        common.getCheckExitStatus().set(true);
+        common.getAbortAndRetryOnMatch().set(false);
+        common.getCaptureOutputInTempFile().set(false);
+        common.getSeparateStderr().set(false);
+        common.getLearnMemoryEstimate().set(false);
+        common.getLogCompression().set(LogCompression.NONE);
+        common.getExecutionEngine().set(ExecutionEngine.EXEC_OPERATIONS);
+        common.getToolServerInstances().set(Runtime.getRuntime().availableProcessors());
+        common.getRetryMaxBackoff().set(Duration.ofMinutes(1));
+        common.getMaxRetries().set(project.provider(() -> retryConditions.isEmpty() ? 1 : 5));
+
+        BetterExecReportService.register(project).ifPresent(reportService -> {
+            task.usesService(reportService);
+            common.getReportService().set(reportService);
+        });
+        Provider<ToolServerService> toolServerService = ToolServerService.register(project);
+        task.usesService(toolServerService);
+        common.getToolServerService().set(toolServerService);
+        ConcurrencyLimits.applyGlobalLimit(task);
+    }
+
+    /** Copies everything but the command itself, and where its output goes, into the work parameters. */
+    static void copyParameters(
+            BetterExecCommon common,
+            RetryConditions retryConditions,
+            ProjectLayout projectLayout,
+            BetterExecWorkParams params) {
+        requireNonNegative("capturedOutputHeadKib", common.getCapturedOutputHeadKib());
+        requireNonNegative("capturedOutputTailKib", common.getCapturedOutputTailKib());
+        requireNonNegative("capturedStderrHeadKib", common.getCapturedStderrHeadKib());
+        requireNonNegative("capturedStderrTailKib", common.getCapturedStderrTailKib());
+
+        params.getWorkingDir().set(common.getWorkingDir());
+        params.getEnvironment().set(common.getEnvironment());
+        params.getCustomErrorMessage().set(common.getCustomErrorMessage());
+        params.getStdin().set(common.getStdin());
+        params.getStdinFile().set(common.getStdinFile());
+        params.getToolServerCommand().set(common.getToolServerCommand());
+        params.getShowRealTimeLogs().set(common.getShowRealTimeLogs());
+        params.getCheckExitStatus().set(common.getCheckExitStatus());
+        params.getCircleLogFilePath().set(common.getCircleLogFilePath());
+        params.getMaxRetries().set(common.getMaxRetries());
+        params.getAbortAndRetryOnMatch().set(common.getAbortAndRetryOnMatch());
+        params.getRetryInitialBackoff().set(common.getRetryInitialBackoff());
+        params.getRetryMaxBackoff().set(common.getRetryMaxBackoff());
+        params.getRetryTimeBudget().set(common.getRetryTimeBudget());
+        params.getAttemptTimeout().set(common.getAttemptTimeout());
+        params.getTotalTimeout().set(common.getTotalTimeout());
+        params.getShouldIncludeStacktraceForFailure().set(common.getShouldIncludeStacktraceForFailure());
+        params.getCapturedOutputHeadKib().set(common.getCapturedOutputHeadKib());
+        params.getCapturedOutputTailKib().set(common.getCapturedOutputTailKib());
+        params.getCaptureOutputInTempFile().set(common.getCaptureOutputInTempFile());
+        params.getSeparateStderr().set(common.getSeparateStderr());
+        params.getOutputParsers().set(common.getOutputParsers());
+        params.getCapturedStderrHeadKib().set(common.getCapturedStderrHeadKib());
+        params.getCapturedStderrTailKib().set(common.getCapturedStderrTailKib());
+        params.getMetricsFile().set(common.getMetricsFile());
+        params.getReportService().set(common.getReportService());
+        params.getMemoryEstimateMib().set(common.getMemoryEstimateMib());
+        params.getLearnMemoryEstimate().set(common.getLearnMemoryEstimate());
+        params.getLogCompression().set(common.getLogCompression());
+        params.getExecutionEngine().set(common.getExecutionEngine());
+        params.getToolServerInstances().set(common.getToolServerInstances());
+        params.getToolServerService().set(common.getToolServerService());
+
+        params.getResolvedWorkingDir()
+                .set(projectLayout.files(common.getWorkingDir()).getSingleFile());
+        retryConditions.copyTo(params);
+    }
+
+    private static void requireNonNegative(String property, Provider<Integer> kib) {
+        if (kib.isPresent() && kib.get() < 0) {
+            throw new IllegalArgumentException(property + " must be at least 0, but was " + kib.get());
+        }
+    }
+
+    static boolean isOnCi(Project project) {
+        return EnvironmentVariables.envVarOrFromTestingProperty(project, "CI").isPresent();
+    }
+
+    static String circleArtifactsLogFileLocation(Project project, Optional<File> logFile) {
+        Optional<String> circleWorkflowJobId =
+                EnvironmentVariables.envVarOrFromTestingProperty(project, "CIRCLE_WORKFLOW_JOB_ID");
+        Optional<String> circleNodeIndex =
+                EnvironmentVariables.envVarOrFromTestingProperty(project, "CIRCLE_NODE_INDEX");
+
+        if (!isOnCi(project) || circleWorkflowJobId.isEmpty() || circleNodeIndex.isEmpty() || logFile.isEmpty()) {
+            return "";
+        }
+
+        String circleHome = EnvironmentVariables.envVarOrFromTestingProperty(project, "CIRCLE_HOME_DIRECTORY")
+                .orElse("/home/circleci/");
+
+        String circleUrl = EnvironmentVariables.envVarOrFromTestingProperty(project, "CIRCLE_BUILD_URL")
+                .map(BetterExec::extractDomain)
+                .orElse("https://<circle_url>");
+        return String.format(
+                "See output at: %s/output/job/%s/artifacts/%s",
+                circleUrl,
+                circleWorkflowJobId.get(),
+                circleNodeIndex.get() + logFile.get().toString().replace(circleHome, "/~/"));
+    }
+}
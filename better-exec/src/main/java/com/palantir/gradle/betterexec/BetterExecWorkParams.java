@@ -15,12 +15,34 @@
  */
 package com.palantir.gradle.betterexec;
 
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.workers.WorkParameters;
 
 interface BetterExecWorkParams extends BetterExecCommon, WorkParameters {
+    ListProperty<String> getCommand();
+
+    Property<String> getTaskPath();
+
     Property<SerializableOrSpec<String>> getRetryWhen();
 
+    MapProperty<OutputChannel, SerializableOrSpec<String>> getRetryWhenLine();
+
+    MapProperty<OutputChannel, SubstringAutomaton> getRetryWhenOutputContains();
+
+    DirectoryProperty getResolvedWorkingDir();
+
+    DirectoryProperty getMemoryEstimatesDir();
+
+    RegularFileProperty getCachedOutputLog();
+
+    Property<String> getCommandKey();
+
+    Property<OutputReplayService> getOutputReplayService();
+
     Property<Boolean> getIsOnCi();
 
     Property<String> getCircleArtifactsUrlLocation();
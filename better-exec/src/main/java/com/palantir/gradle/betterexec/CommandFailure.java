@@ -0,0 +1,51 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import com.palantir.gradle.failurereports.exceptions.ExceptionWithLogs;
+import java.io.Serializable;
+import java.util.List;
+
+/** Why a command failed, kept apart from the exception so that the failures of a batch can be reported together. */
+final class CommandFailure implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> command;
+    private final String header;
+    private final String output;
+
+    CommandFailure(List<String> command, String header, String output) {
+        this.command = List.copyOf(command);
+        this.header = header;
+        this.output = output;
+    }
+
+    List<String> command() {
+        return command;
+    }
+
+    String header() {
+        return header;
+    }
+
+    String output() {
+        return output;
+    }
+
+    ExceptionWithLogs toException(boolean includeStacktrace) {
+        return new ExceptionWithLogs(header, output, includeStacktrace);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Identifies a run of a command by everything that goes into it: the command, its environment, working directory and
+ * stdin, and the input files of the task. Two runs with the same key can be expected to do the same, as long as the
+ * command reads nothing but the input files declared.
+ *
+ * <p>Paths are taken relative to the project of the task, as Gradle's relative path sensitivity does, so the same
+ * command run by tasks of different projects on the same inputs in their own project dirs still gets the same key.
+ */
+final class CommandKey {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CommandKey() {}
+
+    static String of(
+            List<String> command,
+            Map<String, String> environment,
+            Path projectDir,
+            Path workingDir,
+            Optional<String> stdin,
+            Iterable<File> inputFiles) {
+        MessageDigest digest = sha256();
+        command.forEach(arg -> update(digest, arg));
+        new TreeMap<>(environment).forEach((name, value) -> {
+            update(digest, name);
+            update(digest, value);
+        });
+        update(digest, relativePath(projectDir, workingDir));
+        update(digest, stdin.orElse(""));
+
+        Map<String, File> inputsByRelativePath = new TreeMap<>();
+        inputFiles.forEach(
+                inputFile -> inputsByRelativePath.put(relativePath(projectDir, inputFile.toPath()), inputFile));
+        inputsByRelativePath.forEach((relativePath, inputFile) -> {
+            update(digest, relativePath);
+            updateWithContents(digest, inputFile);
+        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** With forward slashes, so the key is the same on every OS. */
+    private static String relativePath(Path projectDir, Path path) {
+        return projectDir
+                .toAbsolutePath()
+                .normalize()
+                .relativize(path.toAbsolutePath().normalize())
+                .toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void updateWithContents(MessageDigest digest, File file) {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (input.read(buffer) != -1) {
+                // Reading is enough to update the digest
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read input file " + file, e);
+        }
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves commands against a {@code PATH}, sharing the results across every task in the daemon. A cached result is
+ * only reused while none of the directories that were searched to find it have been modified since, which is what
+ * happens when an executable is added to or removed from one of them.
+ */
+final class CommandPathCache {
+    private static final ConcurrentMap<Key, Resolution> CACHE = new ConcurrentHashMap<>();
+
+    private CommandPathCache() {}
+
+    static Optional<Path> resolve(String pathEnvVar, String command) {
+        Key key = new Key(pathEnvVar, command);
+        Resolution cached = CACHE.get(key);
+        if (cached != null && cached.isStillValid()) {
+            return cached.executable;
+        }
+
+        Resolution resolution = Resolution.resolve(pathEnvVar, command);
+        CACHE.put(key, resolution);
+        return resolution.executable;
+    }
+
+    /** Searches the {@code PATH} every time, for comparing against the cache in benchmarks. */
+    static Optional<Path> resolveUncached(String pathEnvVar, String command) {
+        return Resolution.resolve(pathEnvVar, command).executable;
+    }
+
+    private static final class Resolution {
+        private final Optional<Path> executable;
+        private final List<Path> searchedDirectories;
+        private final List<Optional<FileTime>> lastModifiedTimes;
+
+        private Resolution(
+                Optional<Path> executable, List<Path> searchedDirectories, List<Optional<FileTime>> lastModifiedTimes) {
+            this.executable = executable;
+            this.searchedDirectories = searchedDirectories;
+            this.lastModifiedTimes = lastModifiedTimes;
+        }
+
+        static Resolution resolve(String pathEnvVar, String command) {
+            List<Path> searchedDirectories = new ArrayList<>();
+            List<Optional<FileTime>> lastModifiedTimes = new ArrayList<>();
+
+            for (String entry : pathEnvVar.split(":")) {
+                Path directory = Paths.get(entry);
+                searchedDirectories.add(directory);
+                lastModifiedTimes.add(lastModifiedTime(directory));
+
+                Path candidate = directory.resolve(command);
+                if (Files.isDirectory(directory) && Files.isExecutable(candidate) && !Files.isDirectory(candidate)) {
+                    return new Resolution(Optional.of(candidate), searchedDirectories, lastModifiedTimes);
+                }
+            }
+
+            return new Resolution(Optional.empty(), searchedDirectories, lastModifiedTimes);
+        }
+
+        boolean isStillValid() {
+            for (int i = 0; i < searchedDirectories.size(); i++) {
+                if (!lastModifiedTime(searchedDirectories.get(i)).equals(lastModifiedTimes.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static Optional<FileTime> lastModifiedTime(Path directory) {
+            try {
+                return Optional.of(Files.getLastModifiedTime(directory));
+            } catch (IOException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String pathEnvVar;
+        private final String command;
+
+        Key(String pathEnvVar, String command) {
+            this.pathEnvVar = pathEnvVar;
+            this.command = command;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return pathEnvVar.equals(key.pathEnvVar) && command.equals(key.command);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pathEnvVar, command);
+        }
+    }
+}
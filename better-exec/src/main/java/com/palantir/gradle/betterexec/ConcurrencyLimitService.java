@@ -0,0 +1,29 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Holds nothing: it exists so that Gradle limits how many tasks using it run at once, through
+ * {@link org.gradle.api.services.BuildServiceSpec#getMaxParallelUsages()}. See {@link ConcurrencyLimits}.
+ */
+abstract class ConcurrencyLimitService implements BuildService<BuildServiceParameters.None> {
+    // Required so Gradle can make the type with reflection, while still keeping the class package-private
+    @SuppressWarnings("checkstyle:RedundantModifier")
+    public ConcurrencyLimitService() {}
+}
@@ -0,0 +1,81 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.util.Locale;
+import java.util.Optional;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildServiceRegistration;
+
+/**
+ * Limits how many better-exec tasks run at once, across the whole build: those sharing a tag, and optionally all of
+ * them. Gradle does the limiting, holding back a task until fewer than the limit of the tasks using the same
+ * {@link ConcurrencyLimitService} are running, so a task held back does not take up a worker while it waits.
+ */
+final class ConcurrencyLimits {
+    /** Limits every better-exec task in the build, for when even the cheap ones need holding back. */
+    static final String MAX_CONCURRENT_TASKS_PROPERTY = "betterExec.maxConcurrentTasks";
+
+    private static final String SERVICE_NAME_PREFIX = "betterExecConcurrencyLimit-";
+    private static final String ALL_TASKS_TAG = "all-better-exec-tasks";
+
+    private ConcurrencyLimits() {}
+
+    static void applyGlobalLimit(Task task) {
+        Optional.ofNullable(task.getProject().findProperty(MAX_CONCURRENT_TASKS_PROPERTY))
+                .map(Object::toString)
+                .map(Integer::parseInt)
+                .ifPresent(maxConcurrent -> limit(task, ALL_TASKS_TAG, maxConcurrent));
+    }
+
+    static void limit(Task task, String tag, int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException(
+                    "Concurrency limit for '" + tag + "' must be at least 1, but was " + maxConcurrent);
+        }
+
+        Project project = task.getProject();
+        String serviceName = SERVICE_NAME_PREFIX + tag;
+        Provider<ConcurrencyLimitService> service = project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent(serviceName, ConcurrencyLimitService.class, spec -> spec.getMaxParallelUsages()
+                        .set(maxConcurrent));
+
+        BuildServiceRegistration<?, ?> registration =
+                project.getGradle().getSharedServices().getRegistrations().getByName(serviceName);
+        Integer existingLimit = registration.getMaxParallelUsages().getOrNull();
+        if (existingLimit == null) {
+            throw new IllegalArgumentException(String.format(
+                    Locale.ROOT,
+                    "Concurrency of '%s' cannot be limited, as a build service named '%s' was already registered by "
+                            + "something else, with no limit",
+                    tag,
+                    serviceName));
+        }
+        if (existingLimit != maxConcurrent) {
+            throw new IllegalArgumentException(String.format(
+                    Locale.ROOT,
+                    "Concurrency of '%s' is already limited to %d, so cannot also be limited to %d",
+                    tag,
+                    existingLimit,
+                    maxConcurrent));
+        }
+
+        task.usesService(service);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a process with {@link ProcessBuilder} rather than {@code ExecOperations}, for the features that need a handle
+ * on the running process, such as stopping it early, or when {@link ExecutionEngine#PROCESS_BUILDER} is asked for. Its
+ * output is read by {@link ProcessStreamPumps}: by the shared pumps when that engine was asked for, and otherwise by
+ * threads of its own, as {@code ExecOperations} would have.
+ */
+final class DirectProcess {
+    private static final Logger log = LoggerFactory.getLogger(DirectProcess.class);
+
+    private static final Duration DESTROYED_OUTPUT_GRACE_PERIOD = Duration.ofSeconds(2);
+
+    private final Process process;
+    private final List<CompletableFuture<Void>> pumps;
+    private volatile boolean destroyed = false;
+    private boolean timedOut = false;
+
+    private DirectProcess(
+            Process process,
+            OutputStream stdout,
+            OutputStream stderr,
+            BooleanSupplier destroyWhen,
+            boolean sharedPumps) {
+        this.process = process;
+        this.pumps = List.of(
+                pump(process.getInputStream(), stdout, destroyWhen, sharedPumps),
+                pump(process.getErrorStream(), stderr, destroyWhen, sharedPumps));
+    }
+
+    static DirectProcess start(
+            ProcessBuilder processBuilder,
+            Optional<byte[]> stdin,
+            OutputStream stdout,
+            OutputStream stderr,
+            BooleanSupplier destroyWhen,
+            boolean sharedPumps)
+            throws IOException {
+        DirectProcess directProcess =
+                new DirectProcess(processBuilder.start(), stdout, stderr, destroyWhen, sharedPumps);
+        directProcess.writeStdin(stdin);
+        return directProcess;
+    }
+
+    /**
+     * Waits for the process to exit and all of its output to be pumped, returning the exit code. If it runs for longer
+     * than the timeout, the process tree is destroyed.
+     */
+    int waitFor(Optional<Duration> timeout) throws IOException {
+        try {
+            if (timeout.isPresent() && !process.waitFor(timeout.get().toNanos(), TimeUnit.NANOSECONDS)) {
+                timedOut = true;
+                destroyTree();
+            }
+
+            int exitCode = process.waitFor();
+            CompletableFuture<Void> allPumped = CompletableFuture.allOf(pumps.toArray(CompletableFuture[]::new));
+            if (destroyed) {
+                waitForRemainingOutputAfterDestroy(allPumped);
+            } else {
+                allPumped.get();
+            }
+            return exitCode;
+        } catch (InterruptedException e) {
+            destroyTree();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for process to finish", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read process output", e.getCause());
+        }
+    }
+
+    /**
+     * A descendant forked between finding the descendants and killing the process escapes being killed, and keeps the
+     * output pipes open until it exits. Rather than wait on it, give up on any output it might still produce.
+     */
+    private static void waitForRemainingOutputAfterDestroy(CompletableFuture<Void> allPumped)
+            throws InterruptedException, ExecutionException {
+        try {
+            allPumped.get(DESTROYED_OUTPUT_GRACE_PERIOD.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn(
+                    "Output of destroyed process was still open after {}, ignoring the rest",
+                    DESTROYED_OUTPUT_GRACE_PERIOD);
+        }
+    }
+
+    ProcessHandle toHandle() {
+        return process.toHandle();
+    }
+
+    /** True if the process was destroyed as it ran for longer than the timeout given to {@link #waitFor}. */
+    boolean timedOut() {
+        return timedOut;
+    }
+
+    /** True if the process was stopped early by {@link #destroyTree()} rather than exiting by itself. */
+    boolean wasDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Kills the process and every process it started. Descendants go first, as once the process itself is gone they
+     * are reparented and can no longer be found from it.
+     */
+    void destroyTree() {
+        destroyed = true;
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private void writeStdin(Optional<byte[]> stdin) {
+        if (stdin.isEmpty()) {
+            closeStdin();
+            return;
+        }
+
+        ProcessStreamPumps.runBlocking(() -> {
+            try (OutputStream processStdin = process.getOutputStream()) {
+                processStdin.write(stdin.get());
+            } catch (IOException e) {
+                // The process exited or closed stdin before reading all of it, which it is allowed to do
+            }
+        });
+    }
+
+    private void closeStdin() {
+        try {
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close process stdin", e);
+        }
+    }
+
+    private CompletableFuture<Void> pump(
+            InputStream from, OutputStream to, BooleanSupplier destroyWhen, boolean sharedPumps) {
+        Runnable afterWrite = () -> {
+            if (!destroyed && destroyWhen.getAsBoolean()) {
+                destroyTree();
+            }
+        };
+        CompletableFuture<Void> pumped = sharedPumps
+                ? ProcessStreamPumps.pump(process, from, to, afterWrite)
+                : ProcessStreamPumps.pumpOnOwnThread(from, to, afterWrite);
+        return pumped.exceptionally(error -> {
+            // Destroying the process closes its streams from under us
+            if (destroyed) {
+                return null;
+            }
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+        });
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+/** How the processes of commands are started, and their output read. */
+public enum ExecutionEngine {
+    /**
+     * Gradle's {@code ExecOperations}, unless something configured needs a handle on the process, such as timeouts or
+     * metrics, in which case it is started with {@link ProcessBuilder}. Its output is then still read by blocking
+     * threads of its own, as {@code ExecOperations} would, rather than the shared threads of {@link #PROCESS_BUILDER}.
+     */
+    EXEC_OPERATIONS,
+
+    /**
+     * {@link ProcessBuilder}, with the output of every process read by the same few threads, rather than each process
+     * having threads of its own, so large batches of commands run at once do not pile up blocked threads.
+     */
+    PROCESS_BUILDER,
+
+    /**
+     * {@link ProcessBuilder}, with stdout and stderr both appended straight to the log file by the process itself, so
+     * none of it is copied through the JVM. Only the part needed for the failure message is read back from the file:
+     * the head and tail as set by {@code capturedOutputHeadKib}/{@code capturedOutputTailKib}, or otherwise the last 64
+     * KiB. Only possible when the output is needed nowhere but the log file, so real time logs, retry conditions on
+     * the output, separate stderr, output parsers, log compression, a cached output log or a tool server make it fall
+     * back to {@link #PROCESS_BUILDER}.
+     */
+    REDIRECT_TO_FILE
+}
@@ -0,0 +1,101 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/** One run of a command, through all of its attempts, as it appears in the execution report. */
+final class ExecutionRecord {
+    private final String taskPath;
+    private final List<String> command;
+    private final String thread;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+    private final List<Attempt> attempts;
+    private final boolean succeeded;
+
+    ExecutionRecord(
+            String taskPath,
+            List<String> command,
+            String thread,
+            Instant startedAt,
+            Instant finishedAt,
+            List<Attempt> attempts,
+            boolean succeeded) {
+        this.taskPath = taskPath;
+        this.command = List.copyOf(command);
+        this.thread = thread;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.attempts = List.copyOf(attempts);
+        this.succeeded = succeeded;
+    }
+
+    String taskPath() {
+        return taskPath;
+    }
+
+    List<String> command() {
+        return command;
+    }
+
+    /** The worker thread it ran on, standing in for the worker slot it held. */
+    String thread() {
+        return thread;
+    }
+
+    Instant startedAt() {
+        return startedAt;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    Duration duration() {
+        return Duration.between(startedAt, finishedAt);
+    }
+
+    List<Attempt> attempts() {
+        return attempts;
+    }
+
+    boolean succeeded() {
+        return succeeded;
+    }
+
+    static final class Attempt {
+        private final AttemptMetrics metrics;
+        private final Optional<String> retryReason;
+
+        Attempt(AttemptMetrics metrics, Optional<String> retryReason) {
+            this.metrics = metrics;
+            this.retryReason = retryReason;
+        }
+
+        AttemptMetrics metrics() {
+            return metrics;
+        }
+
+        /** Why the command was run again after this attempt, if it was. */
+        Optional<String> retryReason() {
+            return retryReason;
+        }
+    }
+}
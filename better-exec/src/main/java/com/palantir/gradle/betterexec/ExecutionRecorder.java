@@ -0,0 +1,63 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/** Collects what happens over the attempts at running a command, and hands it to the execution report at the end. */
+final class ExecutionRecorder {
+    private final Optional<BetterExecReportService> reportService;
+    private final String taskPath;
+    private final List<String> command;
+    private final String thread = Thread.currentThread().getName();
+    private final Instant startedAt = Instant.now();
+    private final List<AttemptMetrics> attempts = new ArrayList<>();
+    private final List<Optional<String>> retryReasons = new ArrayList<>();
+
+    ExecutionRecorder(Optional<BetterExecReportService> reportService, String taskPath, List<String> command) {
+        this.reportService = reportService;
+        this.taskPath = taskPath;
+        this.command = command;
+    }
+
+    void attemptFinished(AttemptMetrics metrics) {
+        attempts.add(metrics);
+        retryReasons.add(Optional.empty());
+    }
+
+    /** Called after {@link #attemptFinished} if the command is going to be run again. */
+    void retrying(String reason) {
+        retryReasons.set(retryReasons.size() - 1, Optional.of(reason));
+    }
+
+    void finish(boolean succeeded) {
+        if (reportService.isEmpty()) {
+            return;
+        }
+
+        List<ExecutionRecord.Attempt> recordedAttempts = new ArrayList<>();
+        for (int i = 0; i < attempts.size(); i++) {
+            recordedAttempts.add(new ExecutionRecord.Attempt(attempts.get(i), retryReasons.get(i)));
+        }
+        reportService
+                .get()
+                .record(new ExecutionRecord(
+                        taskPath, command, thread, startedAt, Instant.now(), recordedAttempts, succeeded));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes what every command in the build did, as {@code executions.json} for tooling and {@code timeline.html} for
+ * people. The timeline has a row per worker thread, so gaps and queueing show up as well as the commands themselves.
+ */
+final class ExecutionReport {
+    static final String JSON_FILE = "executions.json";
+    static final String HTML_FILE = "timeline.html";
+
+    private static final int LONGEST_EXECUTIONS_SHOWN = 20;
+    private static final double MIN_BAR_WIDTH_PERCENT = 0.1;
+
+    private final List<ExecutionRecord> records;
+    private final Instant buildStart;
+    private final Duration span;
+
+    private ExecutionReport(List<ExecutionRecord> records) {
+        this.records = records.stream()
+                .sorted(Comparator.comparing(ExecutionRecord::startedAt))
+                .toList();
+        this.buildStart = this.records.get(0).startedAt();
+        Instant buildEnd = this.records.stream()
+                .map(ExecutionRecord::finishedAt)
+                .max(Comparator.naturalOrder())
+                .get();
+        this.span = Duration.between(buildStart, buildEnd);
+    }
+
+    static void write(File reportDir, List<ExecutionRecord> records) {
+        ExecutionReport report = new ExecutionReport(records);
+        try {
+            Files.createDirectories(reportDir.toPath());
+            Files.writeString(reportDir.toPath().resolve(JSON_FILE), report.toJson(), StandardCharsets.UTF_8);
+            Files.writeString(reportDir.toPath().resolve(HTML_FILE), report.toHtml(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write better-exec report to " + reportDir, e);
+        }
+    }
+
+    String toJson() {
+        return records.stream().map(ExecutionReport::toJson).collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+    }
+
+    private static String toJson(ExecutionRecord record) {
+        List<String> fields = new ArrayList<>();
+        fields.add("\"task\":" + Json.string(record.taskPath()));
+        fields.add("\"command\":" + Json.strings(record.command()));
+        fields.add("\"thread\":" + Json.string(record.thread()));
+        fields.add("\"startedAt\":" + Json.string(record.startedAt().toString()));
+        fields.add("\"finishedAt\":" + Json.string(record.finishedAt().toString()));
+        fields.add("\"durationMillis\":" + record.duration().toMillis());
+        fields.add("\"succeeded\":" + record.succeeded());
+        fields.add("\"attempts\":"
+                + record.attempts().stream()
+                        .map(attempt -> {
+                            List<String> attemptFields =
+                                    new ArrayList<>(attempt.metrics().jsonFields());
+                            attempt.retryReason()
+                                    .ifPresent(reason -> attemptFields.add("\"retryReason\":" + Json.string(reason)));
+                            return "{" + String.join(",", attemptFields) + "}";
+                        })
+                        .collect(Collectors.joining(",", "[", "]")));
+        return "{" + String.join(",", fields) + "}";
+    }
+
+    String toHtml() {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>better-exec timeline</title>\n")
+                .append("<style>\n")
+                .append("body { font-family: sans-serif; font-size: 13px; }\n")
+                .append(".row { display: flex; align-items: center; height: 20px; }\n")
+                .append(".lane { width: 260px; flex: none; overflow: hidden; white-space: nowrap; }\n")
+                .append(".track { position: relative; flex: auto; height: 16px; background: #f4f4f4; }\n")
+                .append(".bar { position: absolute; height: 16px; }\n")
+                .append(".succeeded { background: #4caf50; } .retried { background: #ff9800; }")
+                .append(" .failed { background: #f44336; }\n")
+                .append("td, th { padding: 2px 8px; text-align: left; }\n")
+                .append("</style>\n</head>\n<body>\n");
+
+        html.append(String.format(
+                Locale.ROOT,
+                "<h1>better-exec timeline</h1>\n<p>%d command(s) over %s on %d worker thread(s), at most %d at once."
+                        + " %d failed, %d needed retries.</p>\n",
+                records.size(),
+                seconds(span),
+                lanes().size(),
+                peakConcurrency(),
+                records.stream().filter(record -> !record.succeeded()).count(),
+                records.stream().filter(record -> record.attempts().size() > 1).count()));
+
+        lanes().forEach((thread, laneRecords) -> {
+            html.append("<div class=\"row\"><div class=\"lane\">")
+                    .append(escape(thread))
+                    .append("</div><div class=\"track\">");
+            laneRecords.forEach(record -> appendBars(html, record));
+            html.append("</div></div>\n");
+        });
+
+        html.append("<h2>Longest commands</h2>\n<table>\n<tr><th>Task</th><th>Command</th><th>Duration</th>")
+                .append("<th>Attempts</th><th>Exit code</th></tr>\n");
+        records.stream()
+                .sorted(Comparator.comparing(ExecutionRecord::duration).reversed())
+                .limit(LONGEST_EXECUTIONS_SHOWN)
+                .forEach(record -> html.append("<tr><td>")
+                        .append(escape(record.taskPath()))
+                        .append("</td><td>")
+                        .append(escape(String.join(" ", record.command())))
+                        .append("</td><td>")
+                        .append(seconds(record.duration()))
+                        .append("</td><td>")
+                        .append(record.attempts().size())
+                        .append("</td><td>")
+                        .append(lastExitCode(record))
+                        .append("</td></tr>\n"));
+        return html.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    /** A bar per attempt, so the time spent backing off between them shows as a gap. */
+    private void appendBars(StringBuilder html, ExecutionRecord record) {
+        for (int i = 0; i < record.attempts().size(); i++) {
+            ExecutionRecord.Attempt attempt = record.attempts().get(i);
+            AttemptMetrics metrics = attempt.metrics();
+            boolean last = i == record.attempts().size() - 1;
+            String outcome = !last ? "retried" : record.succeeded() ? "succeeded" : "failed";
+
+            String title = String.format(
+                    Locale.ROOT,
+                    "%s\n%s\n%s%s",
+                    record.taskPath(),
+                    String.join(" ", record.command()),
+                    metrics.summary(),
+                    attempt.retryReason()
+                            .map(reason -> "\nRetried as " + reason)
+                            .orElse(""));
+            html.append(String.format(
+                    Locale.ROOT,
+                    "<div class=\"bar %s\" style=\"left: %.3f%%; width: %.3f%%\" title=\"%s\"></div>",
+                    outcome,
+                    percentOfSpan(Duration.between(buildStart, metrics.startedAt())),
+                    Math.max(MIN_BAR_WIDTH_PERCENT, percentOfSpan(metrics.wallTime())),
+                    escape(title)));
+        }
+    }
+
+    private Map<String, List<ExecutionRecord>> lanes() {
+        return records.stream()
+                .collect(Collectors.groupingBy(ExecutionRecord::thread, LinkedHashMap::new, Collectors.toList()));
+    }
+
+    private int peakConcurrency() {
+        List<Instant> starts =
+                records.stream().map(ExecutionRecord::startedAt).sorted().toList();
+        List<Instant> ends =
+                records.stream().map(ExecutionRecord::finishedAt).sorted().toList();
+        int running = 0;
+        int peak = 0;
+        int endIndex = 0;
+        for (Instant start : starts) {
+            while (!ends.get(endIndex).isAfter(start)) {
+                running--;
+                endIndex++;
+            }
+            running++;
+            peak = Math.max(peak, running);
+        }
+        return peak;
+    }
+
+    private double percentOfSpan(Duration duration) {
+        return span.isZero() ? 0 : 100.0 * duration.toNanos() / span.toNanos();
+    }
+
+    private static String lastExitCode(ExecutionRecord record) {
+        return record.attempts().isEmpty()
+                ? "-"
+                : Integer.toString(record.attempts()
+                        .get(record.attempts().size() - 1)
+                        .metrics()
+                        .exitCode());
+    }
+
+    private static String seconds(Duration duration) {
+        return String.format(Locale.ROOT, "%.1fs", duration.toMillis() / 1000.0);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;")
+                .replace("\n", "&#10;");
+    }
+}
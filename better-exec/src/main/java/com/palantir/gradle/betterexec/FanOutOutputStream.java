@@ -0,0 +1,66 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes everything to each of the given streams in turn. Synchronized as stdout and stderr of the process are
+ * pumped on different threads: the streams for each share a lock, as they share sinks such as the log file. Closing
+ * this stream does not close the streams it writes to.
+ */
+final class FanOutOutputStream extends OutputStream {
+    private final Object lock;
+    private final List<OutputStream> sinks;
+
+    FanOutOutputStream(List<OutputStream> sinks) {
+        this(new Object(), sinks);
+    }
+
+    FanOutOutputStream(Object lock, List<OutputStream> sinks) {
+        this.lock = lock;
+        this.sinks = List.copyOf(sinks);
+    }
+
+    @Override
+    public void write(int byteValue) throws IOException {
+        synchronized (lock) {
+            for (OutputStream sink : sinks) {
+                sink.write(byteValue);
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        synchronized (lock) {
+            for (OutputStream sink : sinks) {
+                sink.write(bytes, off, len);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            for (OutputStream sink : sinks) {
+                sink.flush();
+            }
+        }
+    }
+}
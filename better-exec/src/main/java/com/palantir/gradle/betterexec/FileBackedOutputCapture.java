@@ -0,0 +1,134 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the output to a temp file instead of keeping it on the heap, and only reads back the excerpt of it that is
+ * asked for, a window at a time. The common case of a successful attempt never reads it at all.
+ */
+final class FileBackedOutputCapture extends OutputCapture {
+    private static final Logger log = LoggerFactory.getLogger(FileBackedOutputCapture.class);
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Even when all of it is asked for, at most this much is read back, half from each end, as output big enough to go
+     * past it would not fit in a String, let alone be of use in a failure message.
+     */
+    static final int MAX_READ_BACK_BYTES = 16 * 1024 * 1024;
+
+    private final long headBytes;
+    private final long tailBytes;
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    private FileBackedOutputCapture(long headBytes, long tailBytes) {
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+        try {
+            this.file = Files.createTempFile("better-exec-output", ".log");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create temp file for output", e);
+        }
+    }
+
+    static FileBackedOutputCapture everything() {
+        return new FileBackedOutputCapture(MAX_READ_BACK_BYTES / 2, MAX_READ_BACK_BYTES / 2);
+    }
+
+    static FileBackedOutputCapture headAndTail(int headBytes, int tailBytes) {
+        return new FileBackedOutputCapture(headBytes, tailBytes);
+    }
+
+    @Override
+    public void write(int byteValue) throws IOException {
+        if (!writeBuffer.hasRemaining()) {
+            drainWriteBuffer();
+        }
+        writeBuffer.put((byte) byteValue);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        if (len > writeBuffer.remaining()) {
+            drainWriteBuffer();
+        }
+
+        if (len > writeBuffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes, off, len));
+        } else {
+            writeBuffer.put(bytes, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drainWriteBuffer();
+    }
+
+    @Override
+    String contents() {
+        try {
+            flush();
+            long size = channel.size();
+            long headSize = Math.min(headBytes, size);
+            long tailSize = Math.min(tailBytes, size - headSize);
+            long omittedBytes = size - headSize - tailSize;
+
+            StringBuilder contents = new StringBuilder(decode(channel, 0, headSize));
+            if (omittedBytes > 0) {
+                contents.append(omittedMarker(omittedBytes));
+            }
+            return contents.append(decode(channel, size - tailSize, tailSize)).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read output back from " + file, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete temp file {}", file, e);
+        }
+    }
+
+    private void drainWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        writeFully(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps only the first {@code headBytes} and the last {@code tailBytes} of the output, using a ring buffer for the
+ * tail, so memory use stays fixed however much the process prints. The full output is still available in the log file.
+ */
+final class HeadAndTailOutputCapture extends OutputCapture {
+    private final byte[] head;
+    private final byte[] tail;
+    private int headSize = 0;
+    private int tailStart = 0;
+    private int tailSize = 0;
+    private long totalBytes = 0;
+
+    HeadAndTailOutputCapture(int headBytes, int tailBytes) {
+        this.head = new byte[headBytes];
+        this.tail = new byte[tailBytes];
+    }
+
+    @Override
+    public void write(int byteValue) {
+        write(new byte[] {(byte) byteValue}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        totalBytes += len;
+
+        int toHead = Math.min(len, head.length - headSize);
+        System.arraycopy(bytes, off, head, headSize, toHead);
+        headSize += toHead;
+
+        writeToTail(bytes, off + toHead, len - toHead);
+    }
+
+    private void writeToTail(byte[] bytes, int off, int len) {
+        if (tail.length == 0 || len == 0) {
+            return;
+        }
+
+        if (len >= tail.length) {
+            System.arraycopy(bytes, off + len - tail.length, tail, 0, tail.length);
+            tailStart = 0;
+            tailSize = tail.length;
+            return;
+        }
+
+        int writeFrom = (tailStart + tailSize) % tail.length;
+        int untilEnd = Math.min(len, tail.length - writeFrom);
+        System.arraycopy(bytes, off, tail, writeFrom, untilEnd);
+        System.arraycopy(bytes, off + untilEnd, tail, 0, len - untilEnd);
+
+        int overflow = Math.max(0, tailSize + len - tail.length);
+        tailStart = (tailStart + overflow) % tail.length;
+        tailSize = Math.min(tail.length, tailSize + len);
+    }
+
+    long omittedBytes() {
+        return totalBytes - headSize - tailSize;
+    }
+
+    @Override
+    String contents() {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream(headSize + tailSize);
+        contents.write(head, 0, headSize);
+
+        if (omittedBytes() > 0) {
+            contents.writeBytes(omittedMarker(omittedBytes()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        int untilEnd = Math.min(tailSize, tail.length - tailStart);
+        contents.write(tail, tailStart, untilEnd);
+        contents.write(tail, 0, tailSize - untilEnd);
+
+        return contents.toString(StandardCharsets.UTF_8);
+    }
+}
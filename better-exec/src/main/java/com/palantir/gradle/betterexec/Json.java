@@ -0,0 +1,235 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Just enough JSON to write flat records and read the top level of objects, without pulling a JSON library onto the
+ * classpath of every build.
+ */
+final class Json {
+    private Json() {}
+
+    static String string(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            switch (character) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    appendEscapingControl(builder, character);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    static String strings(List<String> values) {
+        return values.stream().map(Json::string).collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * Reads the top level fields of a JSON object, giving strings, numbers and booleans as their text. Nulls, nested
+     * objects and arrays are left out. Returns empty if the text is not a JSON object.
+     */
+    static Optional<Map<String, String>> objectFields(String text) {
+        try {
+            return Optional.of(new Reader(text).object());
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void appendEscapingControl(StringBuilder builder, char character) {
+        if (character < 0x20) {
+            builder.append(String.format(Locale.ROOT, "\\u%04x", (int) character));
+        } else {
+            builder.append(character);
+        }
+    }
+
+    private static final class Reader {
+        private static final int UNICODE_ESCAPE_LENGTH = 4;
+        private static final int HEX = 16;
+
+        private final String text;
+        private int position = 0;
+
+        Reader(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> object() {
+            skipWhitespace();
+            expect('{');
+            Map<String, String> fields = new LinkedHashMap<>();
+            skipWhitespace();
+            if (!consume('}')) {
+                do {
+                    skipWhitespace();
+                    String key = string();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    value().ifPresent(value -> fields.put(key, value));
+                    skipWhitespace();
+                } while (consume(','));
+                expect('}');
+            }
+
+            skipWhitespace();
+            if (position != text.length()) {
+                throw new IllegalArgumentException("Trailing text after object");
+            }
+            return fields;
+        }
+
+        private Optional<String> value() {
+            char first = peek();
+            if (first == '"') {
+                return Optional.of(string());
+            }
+            if (first == '{' || first == '[') {
+                skipNested();
+                return Optional.empty();
+            }
+
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Expected a value at " + start);
+            }
+            String literal = text.substring(start, position);
+            return literal.equals("null") ? Optional.empty() : Optional.of(literal);
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                char character = peek();
+                if (character == '"') {
+                    string();
+                    continue;
+                }
+                position++;
+                if (character == '{' || character == '[') {
+                    depth++;
+                } else if (character == '}' || character == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            char character;
+            while ((character = next()) != '"') {
+                if (character == '\\') {
+                    appendEscaped(builder);
+                } else {
+                    builder.append(character);
+                }
+            }
+            return builder.toString();
+        }
+
+        private void appendEscaped(StringBuilder builder) {
+            char escaped = next();
+            switch (escaped) {
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'u':
+                    if (position + UNICODE_ESCAPE_LENGTH > text.length()) {
+                        throw new IllegalArgumentException("Truncated unicode escape");
+                    }
+                    builder.append(
+                            (char) Integer.parseInt(text.substring(position, position + UNICODE_ESCAPE_LENGTH), HEX));
+                    position += UNICODE_ESCAPE_LENGTH;
+                    break;
+                default:
+                    builder.append(escaped);
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean consume(char expected) {
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char expected) {
+            if (!consume(expected)) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + position);
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of text");
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char character = peek();
+            position++;
+            return character;
+        }
+    }
+}
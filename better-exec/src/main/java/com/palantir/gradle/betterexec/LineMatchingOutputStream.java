@@ -0,0 +1,40 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+/** Tests each line of the output against the predicates as it is written, remembering only whether any line matched. */
+final class LineMatchingOutputStream extends LineSplittingOutputStream {
+    private final SerializableOrSpec<String> linePredicates;
+    private boolean matched = false;
+
+    LineMatchingOutputStream(SerializableOrSpec<String> linePredicates) {
+        this.linePredicates = linePredicates;
+    }
+
+    boolean matched() {
+        return matched;
+    }
+
+    @Override
+    boolean wantsMoreLines() {
+        return !matched;
+    }
+
+    @Override
+    void onLine(String text) {
+        matched = linePredicates.isSatisfiedBy(text);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the output into lines as it is written, handing each to {@link #onLine} without its line ending. Lines longer
+ * than {@link #MAX_LINE_BYTES} are handed over in chunks of that size so the buffer stays bounded.
+ */
+abstract class LineSplittingOutputStream extends OutputStream {
+    static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final byte[] line = new byte[MAX_LINE_BYTES];
+    private int lineSize = 0;
+
+    abstract void onLine(String text);
+
+    /** Once false, the rest of the output is skipped without being split. */
+    boolean wantsMoreLines() {
+        return true;
+    }
+
+    @Override
+    public final void write(int byteValue) {
+        write(new byte[] {(byte) byteValue}, 0, 1);
+    }
+
+    @Override
+    public final void write(byte[] bytes, int off, int len) {
+        for (int i = off; i < off + len && wantsMoreLines(); i++) {
+            if (bytes[i] == '\n') {
+                endLine();
+            } else {
+                line[lineSize++] = bytes[i];
+                if (lineSize == line.length) {
+                    endLine();
+                }
+            }
+        }
+    }
+
+    /** Hands over any trailing output that did not end in a newline. */
+    final void finish() {
+        if (lineSize > 0 && wantsMoreLines()) {
+            endLine();
+        }
+    }
+
+    private void endLine() {
+        int length = lineSize > 0 && line[lineSize - 1] == '\r' ? lineSize - 1 : lineSize;
+        lineSize = 0;
+        onLine(new String(line, 0, length, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds back starting a process until there is enough free memory for what it is expected to use.
+ *
+ * <p>The {@link #shared()} instance is a static of this plugin's classloader, so it covers every task of the build, and
+ * of any later build in the same daemon that loads the plugin from the same classpath. Anything else running on the
+ * machine, including other builds in the same daemon with a plugin classpath of their own, only counts through the
+ * free memory it leaves.
+ *
+ * <p>A process that has just started has not yet used most of its memory, so the memory it is expected to grow into
+ * is set aside as well. Once it is running, only what it has yet to use is set aside, as the rest shows up in the free
+ * memory anyway.
+ */
+final class MemoryAdmission {
+    private static final Logger log = LoggerFactory.getLogger(MemoryAdmission.class);
+
+    private static final Duration RECHECK_INTERVAL = Duration.ofSeconds(1);
+    private static final double BYTES_PER_MIB = 1024 * 1024;
+
+    private static final MemoryAdmission SHARED = new MemoryAdmission(SystemMemory::availableBytes, RECHECK_INTERVAL);
+
+    private final Supplier<OptionalLong> availableBytes;
+    private final Duration recheckInterval;
+    private final Object lock = new Object();
+    private final List<Admission> admitted = new ArrayList<>();
+
+    MemoryAdmission(Supplier<OptionalLong> availableBytes, Duration recheckInterval) {
+        this.availableBytes = availableBytes;
+        this.recheckInterval = recheckInterval;
+    }
+
+    static MemoryAdmission shared() {
+        return SHARED;
+    }
+
+    /**
+     * Waits until {@code estimateBytes} fits in the free memory. A process is always let through if nothing else is
+     * running, so one expected to use more than there is at all still gets its chance rather than waiting forever.
+     */
+    Admission admit(Optional<Long> estimateBytes, String description) throws IOException {
+        if (estimateBytes.isEmpty()) {
+            return new Admission(0);
+        }
+
+        synchronized (lock) {
+            boolean logged = false;
+            while (true) {
+                OptionalLong headroom = headroom();
+                if (headroom.isEmpty() || estimateBytes.get() <= headroom.getAsLong() || admitted.isEmpty()) {
+                    Admission admission = new Admission(estimateBytes.get());
+                    admitted.add(admission);
+                    return admission;
+                }
+
+                if (!logged) {
+                    log.warn(
+                            "Waiting for {} MiB of memory to be free before running {} ({} MiB free)",
+                            mib(estimateBytes.get()),
+                            description,
+                            mib(headroom.getAsLong()));
+                    logged = true;
+                }
+                waitForRecheck();
+            }
+        }
+    }
+
+    private static String mib(long bytes) {
+        return String.format(Locale.ROOT, "%.0f", bytes / BYTES_PER_MIB);
+    }
+
+    private OptionalLong headroom() {
+        OptionalLong available = availableBytes.get();
+        if (available.isEmpty()) {
+            return available;
+        }
+
+        long setAside = admitted.stream().mapToLong(Admission::yetToUse).sum();
+        return OptionalLong.of(available.getAsLong() - setAside);
+    }
+
+    private void waitForRecheck() throws IOException {
+        try {
+            lock.wait(recheckInterval.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for memory to be free", e);
+        }
+    }
+
+    final class Admission implements Closeable {
+        private final long estimateBytes;
+        private volatile LongSupplier usedBytes = () -> 0;
+
+        private Admission(long estimateBytes) {
+            this.estimateBytes = estimateBytes;
+        }
+
+        /** Where to find how much the admitted process is using, once it has started. */
+        void trackUsage(LongSupplier processUsedBytes) {
+            this.usedBytes = processUsedBytes;
+        }
+
+        private long yetToUse() {
+            return Math.max(0, estimateBytes - usedBytes.getAsLong());
+        }
+
+        @Override
+        public void close() {
+            synchronized (lock) {
+                if (admitted.remove(this)) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
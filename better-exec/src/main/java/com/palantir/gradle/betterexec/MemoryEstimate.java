@@ -0,0 +1,100 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * How much memory a command is expected to use, for {@link MemoryAdmission}. That is what it was declared to use, or,
+ * if learning is enabled, the peak it was last seen to use, kept on disk between builds against a hash of the command.
+ */
+final class MemoryEstimate {
+    private static final long BYTES_PER_MIB = 1024 * 1024;
+
+    private final Optional<Long> declaredBytes;
+    private final Optional<File> learnedFile;
+
+    private MemoryEstimate(Optional<Long> declaredBytes, Optional<File> learnedFile) {
+        this.declaredBytes = declaredBytes;
+        this.learnedFile = learnedFile;
+    }
+
+    static MemoryEstimate forCommand(BetterExecWorkParams params, List<String> command) {
+        Optional<Long> declaredBytes =
+                Optional.ofNullable(params.getMemoryEstimateMib().getOrNull()).map(mib -> mib * BYTES_PER_MIB);
+        Optional<File> learnedFile = params.getLearnMemoryEstimate().get()
+                ? Optional.of(
+                        params.getMemoryEstimatesDir().file(hash(command)).get().getAsFile())
+                : Optional.empty();
+        return new MemoryEstimate(declaredBytes, learnedFile);
+    }
+
+    /** Needs the process tree to be sampled, which only happens when the process is started directly. */
+    boolean isEnabled() {
+        return declaredBytes.isPresent() || learnedFile.isPresent();
+    }
+
+    Optional<Long> bytes() {
+        return learnedFile.flatMap(MemoryEstimate::readLearned).or(() -> declaredBytes);
+    }
+
+    void learnFrom(AttemptMetrics metrics) {
+        if (learnedFile.isEmpty() || metrics.resourceUsage().peakRssBytes().isEmpty()) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(learnedFile.get().getParentFile().toPath());
+            Files.writeString(
+                    learnedFile.get().toPath(),
+                    Long.toString(metrics.resourceUsage().peakRssBytes().getAsLong()),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write learned memory estimate to " + learnedFile.get(), e);
+        }
+    }
+
+    private static Optional<Long> readLearned(File file) {
+        try {
+            return Optional.of(Long.parseLong(
+                    Files.readString(file.toPath(), StandardCharsets.UTF_8).trim()));
+        } catch (IOException | NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String hash(List<String> command) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String arg : command) {
+                digest.update(arg.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the metrics of each attempt to a file as JSON lines, for tooling to pick up. Many tasks may share one file,
+ * so appends are serialised within the daemon and each line is written in a single call.
+ */
+final class MetricsFile {
+    private static final Object LOCK = new Object();
+
+    private MetricsFile() {}
+
+    static void append(File file, AttemptMetrics metrics) {
+        byte[] line = (metrics.toJson() + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (LOCK) {
+            try {
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write metrics to " + file, e);
+            }
+        }
+    }
+}
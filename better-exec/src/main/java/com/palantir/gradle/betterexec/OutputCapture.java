@@ -0,0 +1,106 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import org.gradle.api.provider.Provider;
+
+/**
+ * Keeps the output of a single attempt so it can be matched against by retryWhen and shown when the task fails.
+ * Closed once the attempt has been dealt with.
+ */
+abstract class OutputCapture extends OutputStream {
+    private static final int READ_WINDOW_SIZE = 64 * 1024;
+
+    abstract String contents();
+
+    static OutputCapture create(boolean inTempFile, Provider<Integer> headKib, Provider<Integer> tailKib) {
+        boolean everything = !headKib.isPresent() && !tailKib.isPresent();
+        if (inTempFile) {
+            return everything
+                    ? FileBackedOutputCapture.everything()
+                    : FileBackedOutputCapture.headAndTail(
+                            kibToBytes(headKib.getOrElse(0)), kibToBytes(tailKib.getOrElse(0)));
+        }
+
+        if (everything) {
+            return new FullOutputCapture();
+        }
+
+        return new HeadAndTailOutputCapture(kibToBytes(headKib.getOrElse(0)), kibToBytes(tailKib.getOrElse(0)));
+    }
+
+    static String omittedMarker(long omittedBytes) {
+        return String.format(
+                Locale.ROOT, "\n\n[... %d bytes omitted, see the log file for the full output ...]\n\n", omittedBytes);
+    }
+
+    static int kibToBytes(int kib) {
+        return Math.multiplyExact(kib, 1024);
+    }
+
+    /**
+     * Decodes part of a file a window at a time. Characters split across windows are carried over to the next, and
+     * malformed input is replaced.
+     */
+    static String decode(FileChannel channel, long position, long size) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8
+                .newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer window = ByteBuffer.allocate(READ_WINDOW_SIZE);
+        CharBuffer chars = CharBuffer.allocate(READ_WINDOW_SIZE);
+        StringBuilder decoded = new StringBuilder(Math.toIntExact(size));
+
+        long read = 0;
+        while (read < size) {
+            window.limit(window.position() + (int) Math.min(window.remaining(), size - read));
+            int readNow = channel.read(window, position + read);
+            if (readNow < 0) {
+                break;
+            }
+            read += readNow;
+
+            window.flip();
+            decodeInto(decoder, window, chars, decoded, false);
+            window.compact();
+        }
+
+        window.flip();
+        decodeInto(decoder, window, chars, decoded, true);
+        chars.clear();
+        decoder.flush(chars);
+        return decoded.append(chars.flip()).toString();
+    }
+
+    private static void decodeInto(
+            CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, StringBuilder decoded, boolean endOfInput) {
+        while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+            decoded.append(chars.flip());
+            chars.clear();
+        }
+        decoded.append(chars.flip());
+        chars.clear();
+    }
+}
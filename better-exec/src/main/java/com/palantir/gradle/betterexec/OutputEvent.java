@@ -0,0 +1,93 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/** Something a command reported in its output, such as a compiler error, as found by an {@link OutputParser}. */
+public final class OutputEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** How bad an event is. Only errors are listed when the command fails. */
+    public enum Severity {
+        ERROR,
+        WARNING,
+        INFO
+    }
+
+    private final Severity severity;
+    private final String message;
+    // Kept as an empty path and a line of 0 when unknown, as Optionals are not serializable
+    private final String file;
+    private final int line;
+
+    private OutputEvent(Severity severity, String message, Optional<String> file, OptionalInt line) {
+        this.severity = Objects.requireNonNull(severity, "severity");
+        this.message = Objects.requireNonNull(message, "message");
+        this.file = file.orElse("");
+        this.line = line.orElse(0);
+    }
+
+    public static OutputEvent of(Severity severity, String message) {
+        return new OutputEvent(severity, message, Optional.empty(), OptionalInt.empty());
+    }
+
+    public static OutputEvent error(String message) {
+        return of(Severity.ERROR, message);
+    }
+
+    public static OutputEvent warning(String message) {
+        return of(Severity.WARNING, message);
+    }
+
+    /** The same event, pointing at a line of a file. A line of 0 or less points at the file as a whole. */
+    public OutputEvent at(String filePath, int lineNumber) {
+        return new OutputEvent(
+                severity,
+                message,
+                Optional.of(Objects.requireNonNull(filePath, "filePath")),
+                lineNumber > 0 ? OptionalInt.of(lineNumber) : OptionalInt.empty());
+    }
+
+    public Severity severity() {
+        return severity;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public Optional<String> file() {
+        return file.isEmpty() ? Optional.empty() : Optional.of(file);
+    }
+
+    /** The line of the file, if the event points at one. */
+    public OptionalInt line() {
+        return line > 0 ? OptionalInt.of(line) : OptionalInt.empty();
+    }
+
+    /** In the {@code file:line: severity: message} form compilers use. */
+    @Override
+    public String toString() {
+        String location = file().map(path -> path + (line().isPresent() ? ":" + line().getAsInt() : "") + ": ")
+                .orElse("");
+        return location + severity.name().toLowerCase(Locale.ROOT) + ": " + message;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Runs the output of an attempt through the {@link OutputParser}s as it is written, one line at a time, keeping the
+ * errors found for the failure message and counting the rest. The streams for stdout and stderr each split their own
+ * lines, but are written to under the lock they share, so the errors are kept in the order they were printed.
+ */
+final class OutputEventCollector {
+    private static final int MAX_ERRORS = 100;
+
+    private final List<OutputParser> parsers;
+    private final List<OutputEvent> errors = new ArrayList<>();
+    private int errorCount = 0;
+    private int warningCount = 0;
+
+    OutputEventCollector(List<OutputParser> parsers) {
+        this.parsers = List.copyOf(parsers);
+    }
+
+    boolean isEmpty() {
+        return parsers.isEmpty();
+    }
+
+    /** A stream for one channel of the output. */
+    LineSplittingOutputStream channel() {
+        return new LineSplittingOutputStream() {
+            @Override
+            void onLine(String text) {
+                parse(text);
+            }
+        };
+    }
+
+    /** The errors found, if any, listed one per line, with how many more there were than are kept. */
+    String describeErrors() {
+        StringBuilder description = new StringBuilder(String.format(
+                Locale.ROOT,
+                "Errors found in the output (%d error%s, %d warning%s):\n",
+                errorCount,
+                errorCount == 1 ? "" : "s",
+                warningCount,
+                warningCount == 1 ? "" : "s"));
+        errors.forEach(error -> description.append('\n').append(error));
+        if (errorCount > errors.size()) {
+            description.append("\n... and ").append(errorCount - errors.size()).append(" more errors");
+        }
+        return description.toString();
+    }
+
+    boolean foundErrors() {
+        return errorCount > 0;
+    }
+
+    private void parse(String line) {
+        for (OutputParser parser : parsers) {
+            Optional<OutputEvent> event = parser.parse(line);
+            if (event.isPresent()) {
+                record(event.get());
+                return;
+            }
+        }
+    }
+
+    private void record(OutputEvent event) {
+        if (event.severity() == OutputEvent.Severity.ERROR) {
+            errorCount++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(event);
+            }
+        } else if (event.severity() == OutputEvent.Severity.WARNING) {
+            warningCount++;
+        }
+    }
+}
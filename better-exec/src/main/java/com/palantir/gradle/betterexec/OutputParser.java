@@ -0,0 +1,28 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Serializable;
+import java.util.Optional;
+
+/**
+ * Turns lines of a command's output into {@link OutputEvent}s as the output is produced, so a failure can report just
+ * the errors the command found, rather than all of its output. See {@link OutputParsers} for the built in ones.
+ */
+public interface OutputParser extends Serializable {
+    /** The event the line describes, or empty if it is not one this parser understands. */
+    Optional<OutputEvent> parse(String line);
+}
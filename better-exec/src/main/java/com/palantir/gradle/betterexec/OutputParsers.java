@@ -0,0 +1,125 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/** The built in {@link OutputParser}s. */
+public final class OutputParsers {
+    private OutputParsers() {}
+
+    /**
+     * Lines that are JSON objects, as written by structured loggers. The severity is read from {@code level} or
+     * {@code severity}, the message from {@code message} or {@code msg}, and the location from {@code file},
+     * {@code path} or {@code filename} and {@code line}. Objects without a message, and severities other than errors
+     * and warnings, are treated as informational.
+     */
+    public static OutputParser jsonLines() {
+        return new JsonLines();
+    }
+
+    /**
+     * Lines of the {@code file:line: error: message} form used by javac, gcc, clang, go vet and many others, where the
+     * column after the line and the space after each colon are optional. Notes are treated as informational.
+     */
+    public static OutputParser compilerErrors() {
+        return new CompilerErrors();
+    }
+
+    private static final class JsonLines implements OutputParser {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Optional<OutputEvent> parse(String line) {
+            if (!line.startsWith("{")) {
+                return Optional.empty();
+            }
+            return Json.objectFields(line).flatMap(JsonLines::event);
+        }
+
+        private static Optional<OutputEvent> event(Map<String, String> fields) {
+            return first(fields, "message", "msg").map(message -> {
+                OutputEvent event = OutputEvent.of(
+                        first(fields, "level", "severity")
+                                .map(JsonLines::severity)
+                                .orElse(OutputEvent.Severity.INFO),
+                        message);
+                return first(fields, "file", "path", "filename")
+                        .map(file -> event.at(file, lineNumber(fields)))
+                        .orElse(event);
+            });
+        }
+
+        private static OutputEvent.Severity severity(String level) {
+            String lowerCase = level.toLowerCase(Locale.ROOT);
+            if (lowerCase.startsWith("err") || lowerCase.equals("fatal") || lowerCase.equals("critical")) {
+                return OutputEvent.Severity.ERROR;
+            }
+            return lowerCase.startsWith("warn") ? OutputEvent.Severity.WARNING : OutputEvent.Severity.INFO;
+        }
+
+        private static int lineNumber(Map<String, String> fields) {
+            try {
+                return Integer.parseInt(fields.getOrDefault("line", "0"));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static Optional<String> first(Map<String, String> fields, String... names) {
+            return Stream.of(names)
+                    .map(fields::get)
+                    .filter(value -> value != null)
+                    .findFirst();
+        }
+    }
+
+    private static final class CompilerErrors implements OutputParser {
+        private static final long serialVersionUID = 1L;
+
+        private static final Pattern PATTERN = Pattern.compile(
+                "^(\\S+?):(\\d{1,9})(?::\\d+)?:\\s*(fatal error|error|warning|note):\\s*(.*)$",
+                Pattern.CASE_INSENSITIVE);
+
+        @Override
+        public Optional<OutputEvent> parse(String line) {
+            // A cheap check first, as most lines of most output are not diagnostics.
+            if (line.indexOf(':') < 0) {
+                return Optional.empty();
+            }
+
+            Matcher matcher = PATTERN.matcher(line);
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            return Optional.of(OutputEvent.of(severity(matcher.group(3)), matcher.group(4))
+                    .at(matcher.group(1), Integer.parseInt(matcher.group(2))));
+        }
+
+        private static OutputEvent.Severity severity(String kind) {
+            String lowerCase = kind.toLowerCase(Locale.ROOT);
+            if (lowerCase.endsWith("error")) {
+                return OutputEvent.Severity.ERROR;
+            }
+            return lowerCase.equals("warning") ? OutputEvent.Severity.WARNING : OutputEvent.Severity.INFO;
+        }
+    }
+}
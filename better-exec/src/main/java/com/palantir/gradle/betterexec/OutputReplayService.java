@@ -0,0 +1,167 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceRegistry;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+
+/**
+ * Makes the output of {@link BetterExec} tasks with a {@link BetterExec#getCachedOutputLog() cachedOutputLog} seen
+ * even when the command did not run: by printing the log kept in the build cache when a task is taken from it, and
+ * by running identical commands in the same build only once, with the others printing its log as their own.
+ */
+abstract class OutputReplayService implements BuildService<OutputReplayService.Params>, OperationCompletionListener {
+    private static final String NAME = "betterExecOutputReplay";
+
+    private final Map<String, CompletableFuture<Optional<File>>> runsByKey = new HashMap<>();
+
+    interface Params extends BuildServiceParameters {
+        /** By task path, as the completion events only say which task finished. */
+        MapProperty<String, File> getCachedOutputLogs();
+    }
+
+    // Required so Gradle can make the type with reflection, while still keeping the class package-private
+    @SuppressWarnings("checkstyle:RedundantModifier")
+    public OutputReplayService() {}
+
+    static Provider<OutputReplayService> register(
+            Task task, RegularFileProperty cachedOutputLog, BuildEventsListenerRegistry listenerRegistry) {
+        BuildServiceRegistry sharedServices = task.getProject().getGradle().getSharedServices();
+        boolean firstRegistration = sharedServices.getRegistrations().findByName(NAME) == null;
+        Provider<OutputReplayService> service =
+                sharedServices.registerIfAbsent(NAME, OutputReplayService.class, spec -> {});
+        if (firstRegistration) {
+            listenerRegistry.onTaskCompletion(service);
+        }
+
+        // The log location is only known once the task has been configured, and most tasks will not have one. Only
+        // where it is matters, so it is read directly rather than mapped, as that would carry the task dependency of
+        // an output with it and so could not be read before the task had run.
+        Params params =
+                (Params) sharedServices.getRegistrations().getByName(NAME).getParameters();
+        params.getCachedOutputLogs()
+                .putAll(task.getProject()
+                        .provider(() -> cachedOutputLog.isPresent()
+                                ? Map.of(task.getPath(), cachedOutputLog.get().getAsFile())
+                                : Map.of()));
+        return service;
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        if (!(event instanceof TaskFinishEvent)
+                || !(event.getResult() instanceof TaskSuccessResult)
+                || !((TaskSuccessResult) event.getResult()).isFromCache()) {
+            return;
+        }
+
+        String taskPath = ((TaskFinishEvent) event).getDescriptor().getTaskPath();
+        File cachedOutputLog = getParameters().getCachedOutputLogs().get().get(taskPath);
+        if (cachedOutputLog != null && cachedOutputLog.exists()) {
+            replay(taskPath, "from the build cache", cachedOutputLog);
+        }
+    }
+
+    /**
+     * Runs the command unless an identical one (going by {@code key}) has already succeeded or is running in this
+     * build, in which case its log is waited for and taken as the log of this one. If that one fails, this runs the
+     * command itself, as the failure could be a flake.
+     */
+    Optional<CommandFailure> runOnce(
+            String taskPath, String key, File cachedOutputLog, Supplier<Optional<CommandFailure>> run) {
+        CompletableFuture<Optional<File>> ourRun = new CompletableFuture<>();
+        CompletableFuture<Optional<File>> existingRun;
+        synchronized (runsByKey) {
+            existingRun = runsByKey.putIfAbsent(key, ourRun);
+        }
+
+        if (existingRun != null) {
+            Optional<File> identicalLog = await(existingRun);
+            if (identicalLog.isPresent()) {
+                copy(identicalLog.get(), cachedOutputLog);
+                replay(taskPath, "from an identical command run by another task", cachedOutputLog);
+                return Optional.empty();
+            }
+        }
+
+        boolean succeeded = false;
+        try {
+            Optional<CommandFailure> failure = run.get();
+            succeeded = failure.isEmpty();
+            return failure;
+        } finally {
+            // Only a successful run can stand in for others; after a failure the next identical task tries for itself
+            ourRun.complete(succeeded ? Optional.of(cachedOutputLog) : Optional.empty());
+        }
+    }
+
+    private static Optional<File> await(CompletableFuture<Optional<File>> run) {
+        try {
+            return run.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an identical command to finish", e);
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void copy(File from, File to) {
+        try {
+            to.getParentFile().mkdirs();
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to copy " + from + " to " + to, e);
+        }
+    }
+
+    private static void replay(String taskPath, String source, File cachedOutputLog) {
+        PrintStream console = System.out;
+        try (InputStream log = new GZIPInputStream(Files.newInputStream(cachedOutputLog.toPath()))) {
+            synchronized (console) {
+                console.println("Output of " + taskPath + ", " + source + ":");
+                log.transferTo(console);
+                console.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay the output of " + taskPath, e);
+        }
+    }
+}
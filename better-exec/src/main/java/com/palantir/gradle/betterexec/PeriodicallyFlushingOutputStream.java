@@ -0,0 +1,93 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers writes to the underlying stream, but guarantees that anything written reaches it within
+ * {@code flushInterval}. Used for the log file so that its contents survive the daemon dying mid-process without
+ * paying for a flush on every write.
+ */
+final class PeriodicallyFlushingOutputStream extends OutputStream {
+    private static final Logger log = LoggerFactory.getLogger(PeriodicallyFlushingOutputStream.class);
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "better-exec-log-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OutputStream delegate;
+    private final ScheduledFuture<?> scheduledFlush;
+    private boolean dirty = false;
+    private boolean closed = false;
+
+    PeriodicallyFlushingOutputStream(OutputStream delegate, Duration flushInterval) {
+        this.delegate = delegate;
+        this.scheduledFlush = FLUSHER.scheduleWithFixedDelay(
+                this::flushIfDirty, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void write(int byteValue) throws IOException {
+        delegate.write(byteValue);
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int off, int len) throws IOException {
+        delegate.write(bytes, off, len);
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        delegate.flush();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        scheduledFlush.cancel(false);
+        delegate.close();
+    }
+
+    private synchronized void flushIfDirty() {
+        if (!dirty || closed) {
+            return;
+        }
+
+        try {
+            flush();
+        } catch (IOException e) {
+            log.warn("Failed to flush log file", e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies the output of processes as it arrives.
+ *
+ * <p>{@link #pump} does so without a platform thread blocked on every stream of every process. On Java 21 and later,
+ * each stream is read on a virtual thread of its own, which blocks without holding up a platform thread. Java 17 has
+ * no virtual threads, and Java cannot wait on many pipes at once, so there a small fixed pool of threads instead takes
+ * turns to poll every stream, reading only what is already there so none of them ever blocks. What they read is
+ * written out on another thread, as writing may block, and a slow destination must only hold up its own stream.
+ * Polling backs off while a stream is quiet, from 50us up to 20ms. It starts short as a pipe only holds 64 KiB, so a
+ * chatty process would otherwise spend its time waiting for it to be read.
+ *
+ * <p>{@link #pumpOnOwnThread} blocks a platform thread on the stream until its end, as {@code ExecOperations} does.
+ * Java only closes the stream of an exited process if no read is blocked on it, so this also gets output written after
+ * the process exits by anything it started, which polling loses.
+ */
+final class ProcessStreamPumps {
+    private static final Logger log = LoggerFactory.getLogger(ProcessStreamPumps.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POLLING_THREADS = 2;
+    private static final long MIN_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final Optional<ExecutorService> VIRTUAL_THREADS = virtualThreads();
+
+    private static final ScheduledExecutorService POLLER =
+            Executors.newScheduledThreadPool(POLLING_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "better-exec-process-pump");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Only for reads and writes that may block: stdin, which cannot be written to without blocking, writing out what
+     * was polled, and the read that finds the end of a stream once its process has exited.
+     */
+    private static final ExecutorService BLOCKING =
+            VIRTUAL_THREADS.orElseGet(() -> Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "better-exec-process-blocking-io");
+                thread.setDaemon(true);
+                return thread;
+            }));
+
+    private static final ExecutorService OWN_THREADS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "better-exec-process-output");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ProcessStreamPumps() {}
+
+    /**
+     * Copies everything from the stream of the process to {@code to}, calling {@code afterWrite} after each write. The
+     * returned future completes once the end of the stream is reached.
+     */
+    static CompletableFuture<Void> pump(Process process, InputStream from, OutputStream to, Runnable afterWrite) {
+        if (VIRTUAL_THREADS.isPresent()) {
+            return CompletableFuture.runAsync(() -> copyBlocking(from, to, afterWrite), VIRTUAL_THREADS.get());
+        }
+
+        PolledPump pump = new PolledPump(process, from, to, afterWrite);
+        POLLER.execute(pump);
+        return pump.done;
+    }
+
+    /**
+     * Copies everything from the stream to {@code to} on a platform thread of its own, calling {@code afterWrite} after
+     * each write. The returned future completes once the end of the stream is reached.
+     */
+    static CompletableFuture<Void> pumpOnOwnThread(InputStream from, OutputStream to, Runnable afterWrite) {
+        return CompletableFuture.runAsync(() -> copyBlocking(from, to, afterWrite), OWN_THREADS);
+    }
+
+    static CompletableFuture<Void> runBlocking(Runnable runnable) {
+        return CompletableFuture.runAsync(runnable, BLOCKING);
+    }
+
+    private static void copyBlocking(InputStream from, OutputStream to, Runnable afterWrite) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (from) {
+            int read;
+            while ((read = from.read(buffer)) != -1) {
+                to.write(buffer, 0, read);
+                afterWrite.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** {@code Executors.newVirtualThreadPerTaskExecutor()} is looked up reflectively as this is built for Java 17. */
+    private static Optional<ExecutorService> virtualThreads() {
+        if (Runtime.version().feature() < 21) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of((ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Failed to create virtual threads for reading process output, polling instead", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads whatever is available, and once it has been written out goes round again straight away, or if there is
+     * nothing, waits a little longer each time before looking again.
+     */
+    private static final class PolledPump implements Runnable {
+        private final Process process;
+        private final InputStream from;
+        private final OutputStream to;
+        private final Runnable afterWrite;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long pollIntervalNanos = 0;
+
+        PolledPump(Process process, InputStream from, OutputStream to, Runnable afterWrite) {
+            this.process = process;
+            this.from = from;
+            this.to = to;
+            this.afterWrite = afterWrite;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int read = readAvailable();
+                if (read > 0) {
+                    runBlocking(() -> writeAndPollAgain(read)).whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            done.completeExceptionally(error);
+                        }
+                    });
+                } else if (process.isAlive()) {
+                    pollIntervalNanos =
+                            Math.min(Math.max(MIN_POLL_INTERVAL_NANOS, pollIntervalNanos * 2), MAX_POLL_INTERVAL_NANOS);
+                    POLLER.schedule(this, pollIntervalNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    // Java closes the stream soon after the process exits, unless a read is blocked on it, so output
+                    // from anything the process started that outlives it may be lost. Until then finding the end of
+                    // the stream can block, so is not done on the poller.
+                    runBlocking(() -> copyBlocking(from, to, afterWrite)).whenComplete((ignored, error) -> {
+                        if (error == null) {
+                            done.complete(null);
+                        } else {
+                            done.completeExceptionally(error);
+                        }
+                    });
+                }
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        /** Reads as much as is available and fits in the buffer, returning how much that was. */
+        private int readAvailable() throws IOException {
+            int available = from.available();
+            return available > 0 ? from.read(buffer, 0, Math.min(available, buffer.length)) : 0;
+        }
+
+        /** The buffer is not read into again until this is done with it. */
+        private void writeAndPollAgain(int read) {
+            try {
+                to.write(buffer, 0, read);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            afterWrite.run();
+            pollIntervalNanos = 0;
+            POLLER.execute(this);
+        }
+    }
+}
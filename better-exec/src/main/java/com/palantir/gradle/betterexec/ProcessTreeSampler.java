@@ -0,0 +1,248 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Samples the CPU time and resident memory of a process and all of its descendants while it runs. Samples are taken
+ * often at first, backing off to every {@link #SAMPLE_INTERVAL}, so short commands are measured too.
+ *
+ * <p>On Linux this reads {@code /proc}, which gives user and system time separately and the high water mark of each
+ * process's memory. The CPU time of each process includes that of the children it has already waited for, so work
+ * done by descendants that exit between samples is still counted. Elsewhere only the total CPU time is known, from
+ * {@link ProcessHandle.Info}, and a descendant that exits between samples takes what it used since the last one with
+ * it.
+ *
+ * <p>The JVM reaps the root process the moment it exits, so whatever the root itself does after the last sample is
+ * not seen: at most {@link #SAMPLE_INTERVAL}, and less for commands shorter than that.
+ */
+final class ProcessTreeSampler {
+    private static final Duration FIRST_SAMPLE_INTERVAL = Duration.ofMillis(5);
+    private static final Duration SAMPLE_INTERVAL = Duration.ofMillis(200);
+    private static final Path PROC = Paths.get("/proc");
+    // USER_HZ, which the kernel fixes at 100 for /proc whatever the actual tick rate
+    private static final long NANOS_PER_CLOCK_TICK = TimeUnit.SECONDS.toNanos(1) / 100;
+    private static final long BYTES_PER_KIB = 1024;
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "better-exec-metrics-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ProcessHandle root;
+    private final boolean procAvailable;
+    private final Map<Long, CpuTime> lastCpuTimeByPid = new HashMap<>();
+    private CpuTime procTreeCpuTime = new CpuTime(0, 0, 0);
+    private boolean procCpuKnown = false;
+    private long nextIntervalMillis = FIRST_SAMPLE_INTERVAL.toMillis();
+    private ScheduledFuture<?> scheduledSample;
+    private boolean stopped = false;
+    private volatile long currentRssBytes = 0;
+    private long peakRssBytes = 0;
+    private boolean rssKnown = false;
+
+    private ProcessTreeSampler(ProcessHandle root) {
+        this.root = root;
+        this.procAvailable = Files.isDirectory(PROC.resolve(Long.toString(root.pid())));
+        synchronized (this) {
+            this.scheduledSample = SAMPLER.schedule(this::sampleAndReschedule, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static ProcessTreeSampler start(ProcessHandle root) {
+        return new ProcessTreeSampler(root);
+    }
+
+    /**
+     * Stops sampling, returning what was used. A last sample is taken first, which still sees any descendants that
+     * outlive the root.
+     */
+    synchronized ResourceUsage stop() {
+        stopped = true;
+        scheduledSample.cancel(false);
+        sample();
+
+        if (procAvailable) {
+            return new ResourceUsage(
+                    knownIf(procCpuKnown, Duration.ofNanos(procTreeCpuTime.userNanos)),
+                    knownIf(procCpuKnown, Duration.ofNanos(procTreeCpuTime.systemNanos)),
+                    knownIf(procCpuKnown, Duration.ofNanos(procTreeCpuTime.totalNanos)),
+                    peakRss());
+        }
+
+        long totalNanos = 0;
+        for (CpuTime cpuTime : lastCpuTimeByPid.values()) {
+            totalNanos += cpuTime.totalNanos;
+        }
+        return new ResourceUsage(
+                Optional.empty(),
+                Optional.empty(),
+                knownIf(!lastCpuTimeByPid.isEmpty(), Duration.ofNanos(totalNanos)),
+                peakRss());
+    }
+
+    private OptionalLong peakRss() {
+        return rssKnown ? OptionalLong.of(peakRssBytes) : OptionalLong.empty();
+    }
+
+    private static Optional<Duration> knownIf(boolean known, Duration duration) {
+        return known ? Optional.of(duration) : Optional.empty();
+    }
+
+    /** The resident memory of the whole tree as of the last sample, or 0 if it is not known. */
+    long currentRssBytes() {
+        return currentRssBytes;
+    }
+
+    private synchronized void sampleAndReschedule() {
+        if (stopped) {
+            return;
+        }
+
+        sample();
+        scheduledSample = SAMPLER.schedule(this::sampleAndReschedule, nextIntervalMillis, TimeUnit.MILLISECONDS);
+        nextIntervalMillis = Math.min(nextIntervalMillis * 2, SAMPLE_INTERVAL.toMillis());
+    }
+
+    private synchronized void sample() {
+        // Parents before their children, as BFS order gives, so a child waited for in between is not counted twice
+        List<ProcessHandle> tree = Stream.concat(Stream.of(root), root.descendants())
+                .filter(ProcessHandle::isAlive)
+                .toList();
+
+        if (procAvailable) {
+            sampleProc(tree);
+        } else {
+            for (ProcessHandle process : tree) {
+                handleCpuTime(process).ifPresent(time -> lastCpuTimeByPid.put(process.pid(), time));
+            }
+        }
+    }
+
+    /**
+     * Each process's CPU time includes the children it has waited for, so the sum over the processes still running is
+     * everything the tree has used. It only drops when part of the tree goes without being waited for, such as the
+     * root being reaped, so the highest sum is kept.
+     */
+    private void sampleProc(List<ProcessHandle> tree) {
+        long userNanos = 0;
+        long systemNanos = 0;
+        boolean anyCpuKnown = false;
+        long treeRssBytes = 0;
+        for (ProcessHandle process : tree) {
+            Optional<CpuTime> cpuTime = procCpuTime(process.pid());
+            if (cpuTime.isPresent()) {
+                anyCpuKnown = true;
+                userNanos += cpuTime.get().userNanos;
+                systemNanos += cpuTime.get().systemNanos;
+            }
+
+            Map<String, Long> memoryKib = procMemoryKib(process.pid());
+            treeRssBytes += memoryKib.getOrDefault("VmRSS", 0L) * BYTES_PER_KIB;
+            recordRss(memoryKib.getOrDefault("VmHWM", 0L) * BYTES_PER_KIB);
+        }
+        recordRss(treeRssBytes);
+        currentRssBytes = treeRssBytes;
+
+        if (anyCpuKnown && userNanos + systemNanos >= procTreeCpuTime.totalNanos) {
+            procCpuKnown = true;
+            procTreeCpuTime = new CpuTime(userNanos, systemNanos, userNanos + systemNanos);
+        }
+    }
+
+    private void recordRss(long rssBytes) {
+        if (rssBytes > 0) {
+            rssKnown = true;
+            peakRssBytes = Math.max(peakRssBytes, rssBytes);
+        }
+    }
+
+    private static Optional<CpuTime> handleCpuTime(ProcessHandle process) {
+        return process.info().totalCpuDuration().map(total -> new CpuTime(0, 0, total.toNanos()));
+    }
+
+    /**
+     * Reads utime, stime, cutime and cstime, the 14th to 17th fields of {@code /proc/<pid>/stat}. The last two are the
+     * time of the children the process has waited for.
+     */
+    private static Optional<CpuTime> procCpuTime(long pid) {
+        Optional<String> stat = readProcFile(pid, "stat");
+        if (stat.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // The second field is the executable name in parentheses, which may itself contain spaces and parentheses
+        String[] fieldsAfterName =
+                stat.get().substring(stat.get().lastIndexOf(')') + 2).split(" ");
+        long userNanos =
+                (Long.parseLong(fieldsAfterName[11]) + Long.parseLong(fieldsAfterName[13])) * NANOS_PER_CLOCK_TICK;
+        long systemNanos =
+                (Long.parseLong(fieldsAfterName[12]) + Long.parseLong(fieldsAfterName[14])) * NANOS_PER_CLOCK_TICK;
+        return Optional.of(new CpuTime(userNanos, systemNanos, userNanos + systemNanos));
+    }
+
+    private static Map<String, Long> procMemoryKib(long pid) {
+        Map<String, Long> memoryKib = new HashMap<>();
+        readProcFile(pid, "status").ifPresent(status -> status.lines()
+                .filter(line -> line.startsWith("VmRSS:") || line.startsWith("VmHWM:"))
+                .forEach(line -> memoryKib.put(line.substring(0, line.indexOf(':')), parseKib(line))));
+        return memoryKib;
+    }
+
+    private static long parseKib(String statusLine) {
+        String value = statusLine.substring(statusLine.indexOf(':') + 1).trim();
+        return Long.parseLong(value.substring(0, value.indexOf(' ')));
+    }
+
+    /** Empty if the process has already gone, which it can at any moment. */
+    private static Optional<String> readProcFile(long pid, String name) {
+        try {
+            return Optional.of(
+                    Files.readString(PROC.resolve(Long.toString(pid)).resolve(name), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static final class CpuTime {
+        private final long userNanos;
+        private final long systemNanos;
+        private final long totalNanos;
+
+        CpuTime(long userNanos, long systemNanos, long totalNanos) {
+            this.userNanos = userNanos;
+            this.systemNanos = systemNanos;
+            this.totalNanos = totalNanos;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import org.gradle.api.provider.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The output of an attempt whose process wrote it straight to a file, with nothing passing through the JVM. Only the
+ * part of the file written during the attempt is its output, and of that only the head and tail are read back, and
+ * only if asked for. With no log file to write to, the process writes to a temp file of its own instead.
+ */
+final class RedirectedOutput implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(RedirectedOutput.class);
+
+    private static final long DEFAULT_TAIL_BYTES = 64 * 1024;
+
+    private final File file;
+    private final boolean isTempFile;
+    private final long headBytes;
+    private final long tailBytes;
+    private final long start;
+    private long end;
+
+    private RedirectedOutput(File file, boolean isTempFile, long headBytes, long tailBytes) {
+        this.file = file;
+        this.isTempFile = isTempFile;
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+        this.start = file.length();
+        this.end = start;
+    }
+
+    /** Reads back {@code DEFAULT_TAIL_BYTES} from the end of the output, unless told otherwise. */
+    static RedirectedOutput create(Optional<File> logFile, Provider<Integer> headKib, Provider<Integer> tailKib) {
+        boolean bounded = headKib.isPresent() || tailKib.isPresent();
+        long headBytes = OutputCapture.kibToBytes(headKib.getOrElse(0));
+        long tailBytes = bounded ? OutputCapture.kibToBytes(tailKib.getOrElse(0)) : DEFAULT_TAIL_BYTES;
+        if (logFile.isPresent()) {
+            return new RedirectedOutput(logFile.get(), false, headBytes, tailBytes);
+        }
+
+        try {
+            File tempFile = Files.createTempFile("better-exec-output", ".log").toFile();
+            return new RedirectedOutput(tempFile, true, headBytes, tailBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create temp file for output", e);
+        }
+    }
+
+    /** Where the process should append its output. */
+    File file() {
+        return file;
+    }
+
+    /** Called once the process has exited, as anything written to the file after that is not its output. */
+    void processExited() {
+        end = file.length();
+    }
+
+    long size() {
+        return end - start;
+    }
+
+    /** The head and tail of the output, read back from the file. */
+    String contents() {
+        long headSize = Math.min(headBytes, size());
+        long tailSize = Math.min(tailBytes, size() - headSize);
+        long omittedBytes = size() - headSize - tailSize;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            StringBuilder contents = new StringBuilder(OutputCapture.decode(channel, start, headSize));
+            if (omittedBytes > 0) {
+                contents.append(OutputCapture.omittedMarker(omittedBytes));
+            }
+            return contents.append(OutputCapture.decode(channel, end - tailSize, tailSize))
+                    .toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read output back from " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (isTempFile && !file.delete() && file.exists()) {
+            log.warn("Failed to delete temp file {}", file);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * CPU time and memory used by a process and everything it started. Each is only known on some platforms, and on
+ * some only in part: user and system CPU time are split on Linux, while elsewhere only their total is known.
+ */
+final class ResourceUsage implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /** Stands in for a value that is not known, as none of them can be negative. */
+    private static final long NOT_KNOWN = -1;
+
+    private static final ResourceUsage UNKNOWN =
+            new ResourceUsage(Optional.empty(), Optional.empty(), Optional.empty(), OptionalLong.empty());
+
+    private final long cpuUserNanos;
+    private final long cpuSystemNanos;
+    private final long cpuTotalNanos;
+    private final long peakRssBytes;
+
+    ResourceUsage(
+            Optional<Duration> cpuUser,
+            Optional<Duration> cpuSystem,
+            Optional<Duration> cpuTotal,
+            OptionalLong peakRssBytes) {
+        this.cpuUserNanos = cpuUser.map(Duration::toNanos).orElse(NOT_KNOWN);
+        this.cpuSystemNanos = cpuSystem.map(Duration::toNanos).orElse(NOT_KNOWN);
+        this.cpuTotalNanos = cpuTotal.map(Duration::toNanos).orElse(NOT_KNOWN);
+        this.peakRssBytes = peakRssBytes.orElse(NOT_KNOWN);
+    }
+
+    static ResourceUsage unknown() {
+        return UNKNOWN;
+    }
+
+    Optional<Duration> cpuUser() {
+        return duration(cpuUserNanos);
+    }
+
+    Optional<Duration> cpuSystem() {
+        return duration(cpuSystemNanos);
+    }
+
+    Optional<Duration> cpuTotal() {
+        return duration(cpuTotalNanos);
+    }
+
+    /** The most resident memory the process tree was seen to use at once, or any one process of it used. */
+    OptionalLong peakRssBytes() {
+        return peakRssBytes == NOT_KNOWN ? OptionalLong.empty() : OptionalLong.of(peakRssBytes);
+    }
+
+    private static Optional<Duration> duration(long nanos) {
+        return nanos == NOT_KNOWN ? Optional.empty() : Optional.of(Duration.ofNanos(nanos));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponential backoff with full jitter between attempts: the delay before a retry is picked uniformly between zero
+ * and the initial backoff doubled for each failed attempt, capped at the max backoff. Spreading the delays out
+ * stops many tasks that failed together from retrying against the same server at the same moment.
+ */
+final class RetryBackoff {
+    private final Optional<Duration> initialBackoff;
+    private final Duration maxBackoff;
+    private final Optional<Duration> retryTimeBudget;
+    private final Random random;
+    private final LongSupplier nanoTime;
+    private final long startNanos;
+
+    /** The random delays and the clock the budget is measured with are given, so tests can control them. */
+    RetryBackoff(
+            Optional<Duration> initialBackoff,
+            Duration maxBackoff,
+            Optional<Duration> retryTimeBudget,
+            Random random,
+            LongSupplier nanoTime) {
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryTimeBudget = retryTimeBudget;
+        this.random = random;
+        this.nanoTime = nanoTime;
+        this.startNanos = nanoTime.getAsLong();
+    }
+
+    static RetryBackoff create(BetterExecCommon parameters) {
+        return new RetryBackoff(
+                Optional.ofNullable(parameters.getRetryInitialBackoff().getOrNull()),
+                parameters.getRetryMaxBackoff().get(),
+                Optional.ofNullable(parameters.getRetryTimeBudget().getOrNull()),
+                // Only ever used on the thread running the attempts, which is the one creating it
+                ThreadLocalRandom.current(),
+                System::nanoTime);
+    }
+
+    /**
+     * How long to wait before the next attempt, or empty if doing so would go over the retry time budget, measured
+     * from when the first attempt started.
+     */
+    Optional<Duration> delayBeforeRetry(int failedAttempts) {
+        Duration delay = initialBackoff
+                .map(initial -> jitter(cap(initial, failedAttempts)))
+                .orElse(Duration.ZERO);
+
+        Duration elapsed = Duration.ofNanos(nanoTime.getAsLong() - startNanos);
+        if (retryTimeBudget.isPresent() && elapsed.plus(delay).compareTo(retryTimeBudget.get()) > 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(delay);
+    }
+
+    private Duration cap(Duration initial, int failedAttempts) {
+        long initialMillis = Math.min(initial.toMillis(), maxBackoff.toMillis());
+        // Stop doubling before the shift would overflow, by which point it is well past the max backoff anyway
+        int doublings = Math.min(failedAttempts - 1, Long.numberOfLeadingZeros(initialMillis) - 1);
+        return Duration.ofMillis(Math.min(maxBackoff.toMillis(), initialMillis << doublings));
+    }
+
+    private Duration jitter(Duration cap) {
+        return Duration.ofMillis(random.nextLong(cap.toMillis() + 1));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/** The retryWhen* conditions of a task, added to after construction and handed to the work action at execution. */
+final class RetryConditions {
+    private final SerializableOrSpec<String> retryWhen = SerializableOrSpec.empty();
+    private final Map<OutputChannel, SerializableOrSpec<String>> retryWhenLine = new EnumMap<>(OutputChannel.class);
+    private final Map<OutputChannel, List<String>> retryWhenOutputContains = new EnumMap<>(OutputChannel.class);
+
+    RetryConditions() {
+        for (OutputChannel channel : OutputChannel.values()) {
+            retryWhenLine.put(channel, SerializableOrSpec.empty());
+            retryWhenOutputContains.put(channel, new ArrayList<>());
+        }
+    }
+
+    void retryWhen(SerializablePredicate<String> outputMatcher) {
+        retryWhen.or(outputMatcher);
+    }
+
+    void retryWhenAnyLine(SerializablePredicate<String> lineMatcher) {
+        for (OutputChannel channel : OutputChannel.values()) {
+            retryWhenAnyLine(channel, lineMatcher);
+        }
+    }
+
+    void retryWhenAnyLine(OutputChannel channel, SerializablePredicate<String> lineMatcher) {
+        retryWhenLine.get(channel).or(lineMatcher);
+    }
+
+    void retryWhenOutputContains(String substring) {
+        for (OutputChannel channel : OutputChannel.values()) {
+            retryWhenOutputContains(channel, substring);
+        }
+    }
+
+    void retryWhenOutputContains(OutputChannel channel, String substring) {
+        retryWhenOutputContains.get(channel).add(substring);
+    }
+
+    boolean isEmpty() {
+        return retryWhen.isEmpty()
+                && retryWhenLine.values().stream().allMatch(SerializableOrSpec::isEmpty)
+                && retryWhenOutputContains.values().stream().allMatch(List::isEmpty);
+    }
+
+    void copyTo(BetterExecWorkParams params) {
+        params.getRetryWhen().set(retryWhen);
+        for (OutputChannel channel : OutputChannel.values()) {
+            params.getRetryWhenLine().put(channel, retryWhenLine.get(channel));
+            params.getRetryWhenOutputContains()
+                    .put(channel, SubstringAutomaton.of(retryWhenOutputContains.get(channel)));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Evaluates the retry conditions that can be checked as the output streams past, so the reason to retry is known as
+ * soon as the matching output is produced.
+ */
+final class StreamingRetryMatcher extends OutputStream {
+    private final LineMatchingOutputStream lineMatcher;
+    private final SubstringMatchingOutputStream substringMatcher;
+    private final boolean matchLines;
+    private final boolean matchSubstrings;
+
+    StreamingRetryMatcher(SerializableOrSpec<String> retryWhenLine, SubstringAutomaton retryWhenOutputContains) {
+        this.lineMatcher = new LineMatchingOutputStream(retryWhenLine);
+        this.substringMatcher = new SubstringMatchingOutputStream(retryWhenOutputContains);
+        this.matchLines = !retryWhenLine.isEmpty();
+        this.matchSubstrings = !retryWhenOutputContains.isEmpty();
+    }
+
+    boolean isEmpty() {
+        return !matchLines && !matchSubstrings;
+    }
+
+    @Override
+    public void write(int byteValue) {
+        write(new byte[] {(byte) byteValue}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        if (matchLines) {
+            lineMatcher.write(bytes, off, len);
+        }
+        if (matchSubstrings) {
+            substringMatcher.write(bytes, off, len);
+        }
+    }
+
+    /** Matches any trailing output that did not end in a newline. */
+    void finish() {
+        lineMatcher.finish();
+    }
+
+    Optional<String> retryReason() {
+        return substringMatcher
+                .matchedSubstring()
+                .map(substring -> "output contains '" + substring + "'")
+                .or(() -> lineMatcher.matched() ? Optional.of("a line matched retryWhenAnyLine") : Optional.empty());
+    }
+}
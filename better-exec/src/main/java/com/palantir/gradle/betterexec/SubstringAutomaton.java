@@ -0,0 +1,152 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton over the UTF-8 bytes of a set of literal substrings, so the output can be checked for all
+ * of them in a single pass, a chunk at a time, without ever being decoded. Only the substrings are serialized; the
+ * transition table is rebuilt when deserialized.
+ */
+final class SubstringAutomaton implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int ALPHABET_SIZE = 256;
+    private static final int ROOT = 0;
+    private static final int NO_MATCH = -1;
+
+    private final List<String> substrings;
+    private transient int[] transitions;
+    private transient int[] matchedSubstring;
+
+    private SubstringAutomaton(List<String> substrings) {
+        this.substrings = List.copyOf(substrings);
+        compile();
+    }
+
+    static SubstringAutomaton of(List<String> substrings) {
+        return new SubstringAutomaton(substrings);
+    }
+
+    boolean isEmpty() {
+        return substrings.isEmpty();
+    }
+
+    Scanner scanner() {
+        return new Scanner();
+    }
+
+    private void compile() {
+        List<byte[]> patterns = substrings.stream()
+                .map(substring -> substring.getBytes(StandardCharsets.UTF_8))
+                .toList();
+        int maxStates =
+                1 + patterns.stream().mapToInt(pattern -> pattern.length).sum();
+
+        int[] trie = new int[maxStates * ALPHABET_SIZE];
+        int[] matches = new int[maxStates];
+        Arrays.fill(matches, NO_MATCH);
+
+        int states = buildTrie(patterns, trie, matches);
+        addFallbackTransitions(trie, matches, states);
+
+        this.transitions = Arrays.copyOf(trie, states * ALPHABET_SIZE);
+        this.matchedSubstring = Arrays.copyOf(matches, states);
+    }
+
+    private static int buildTrie(List<byte[]> patterns, int[] trie, int[] matches) {
+        int states = 1;
+        for (int index = 0; index < patterns.size(); index++) {
+            int state = ROOT;
+            for (byte value : patterns.get(index)) {
+                int slot = state * ALPHABET_SIZE + Byte.toUnsignedInt(value);
+                if (trie[slot] == ROOT) {
+                    trie[slot] = states++;
+                }
+                state = trie[slot];
+            }
+            if (matches[state] == NO_MATCH) {
+                matches[state] = index;
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Turns the trie into a full DFA, breadth first, by pointing each missing edge at the same transition from the
+     * state for the longest proper suffix that is also in the trie. States also match anything their suffix matches.
+     */
+    private static void addFallbackTransitions(int[] trie, int[] matches, int states) {
+        int[] fallback = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int value = 0; value < ALPHABET_SIZE; value++) {
+            if (trie[value] != ROOT) {
+                queue.add(trie[value]);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            if (matches[state] == NO_MATCH) {
+                matches[state] = matches[fallback[state]];
+            }
+
+            for (int value = 0; value < ALPHABET_SIZE; value++) {
+                int slot = state * ALPHABET_SIZE + value;
+                int fallbackTransition = trie[fallback[state] * ALPHABET_SIZE + value];
+                if (trie[slot] == ROOT) {
+                    trie[slot] = fallbackTransition;
+                } else {
+                    fallback[trie[slot]] = fallbackTransition;
+                    queue.add(trie[slot]);
+                }
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        compile();
+    }
+
+    /** Holds the position in the automaton for one stream of output. */
+    final class Scanner {
+        private int state = ROOT;
+        private int matched = matchedSubstring[ROOT];
+
+        /** Feeds in the next chunk of output, returning true once any substring has been seen. */
+        boolean scan(byte[] bytes, int off, int len) {
+            for (int i = off; i < off + len && matched == NO_MATCH; i++) {
+                state = transitions[state * ALPHABET_SIZE + Byte.toUnsignedInt(bytes[i])];
+                matched = matchedSubstring[state];
+            }
+            return matched != NO_MATCH;
+        }
+
+        Optional<String> matchedSubstring() {
+            return matched == NO_MATCH ? Optional.empty() : Optional.of(substrings.get(matched));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.OutputStream;
+import java.util.Optional;
+
+/** Checks the output for any of the substrings as it is written, remembering only the first one found. */
+final class SubstringMatchingOutputStream extends OutputStream {
+    private final SubstringAutomaton.Scanner scanner;
+
+    SubstringMatchingOutputStream(SubstringAutomaton automaton) {
+        this.scanner = automaton.scanner();
+    }
+
+    @Override
+    public void write(int byteValue) {
+        write(new byte[] {(byte) byteValue}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) {
+        scanner.scan(bytes, off, len);
+    }
+
+    Optional<String> matchedSubstring() {
+        return scanner.matchedSubstring();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.LongStream;
+
+/**
+ * How much memory could be used by a new process without anything being swapped out or OOM killed. That is the least
+ * of what the kernel thinks is available and what is left under the memory limit of our cgroup, as on CI the
+ * container limit is often far below the memory of the machine. Only known on Linux.
+ */
+final class SystemMemory {
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+    private static final Path CGROUP_V2 = Paths.get("/sys/fs/cgroup");
+    private static final Path CGROUP_V1 = Paths.get("/sys/fs/cgroup/memory");
+    private static final long BYTES_PER_KIB = 1024;
+
+    private SystemMemory() {}
+
+    static OptionalLong availableBytes() {
+        LongStream.Builder candidates = LongStream.builder();
+        memAvailable().ifPresent(candidates::add);
+        cgroupHeadroom(CGROUP_V2.resolve("memory.max"), CGROUP_V2.resolve("memory.current"))
+                .or(() -> cgroupHeadroom(
+                        CGROUP_V1.resolve("memory.limit_in_bytes"), CGROUP_V1.resolve("memory.usage_in_bytes")))
+                .ifPresent(candidates::add);
+        return candidates.build().min();
+    }
+
+    private static Optional<Long> memAvailable() {
+        return read(MEMINFO).flatMap(meminfo -> meminfo.lines()
+                .filter(line -> line.startsWith("MemAvailable:"))
+                .findFirst()
+                .map(line -> {
+                    String value = line.substring(line.indexOf(':') + 1).trim();
+                    return Long.parseLong(value.substring(0, value.indexOf(' '))) * BYTES_PER_KIB;
+                }));
+    }
+
+    /** Empty when there is no limit, which v2 writes as {@code max} and v1 as a huge number. */
+    private static Optional<Long> cgroupHeadroom(Path limitFile, Path usageFile) {
+        Optional<String> limit = read(limitFile).map(String::trim);
+        Optional<String> usage = read(usageFile).map(String::trim);
+        if (limit.isEmpty() || usage.isEmpty() || limit.get().equals("max")) {
+            return Optional.empty();
+        }
+
+        long limitBytes = Long.parseLong(limit.get());
+        if (limitBytes >= Long.MAX_VALUE / 2) {
+            return Optional.empty();
+        }
+        return Optional.of(Math.max(0, limitBytes - Long.parseLong(usage.get())));
+    }
+
+    private static Optional<String> read(Path file) {
+        try {
+            return Optional.of(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+}
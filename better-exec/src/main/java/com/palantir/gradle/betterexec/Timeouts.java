@@ -0,0 +1,75 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/** Tracks the per-attempt and total timeouts, the latter measured from when the first attempt started. */
+final class Timeouts {
+    private final Optional<Duration> attemptTimeout;
+    private final Optional<Duration> totalTimeout;
+    private final long startNanos = System.nanoTime();
+
+    private Timeouts(Optional<Duration> attemptTimeout, Optional<Duration> totalTimeout) {
+        this.attemptTimeout = attemptTimeout;
+        this.totalTimeout = totalTimeout;
+    }
+
+    static Timeouts start(BetterExecCommon parameters) {
+        return new Timeouts(
+                Optional.ofNullable(parameters.getAttemptTimeout().getOrNull()),
+                Optional.ofNullable(parameters.getTotalTimeout().getOrNull()));
+    }
+
+    boolean isEmpty() {
+        return attemptTimeout.isEmpty() && totalTimeout.isEmpty();
+    }
+
+    Optional<Duration> attemptTimeout() {
+        return attemptTimeout;
+    }
+
+    Optional<Duration> totalTimeout() {
+        return totalTimeout;
+    }
+
+    /** How long the next attempt may run for before it is killed: the smaller of the two timeouts. */
+    Optional<Duration> forNextAttempt() {
+        Optional<Duration> remaining = remainingTotal();
+        if (remaining.isPresent()
+                && attemptTimeout
+                        .map(attempt -> remaining.get().compareTo(attempt) < 0)
+                        .orElse(true)) {
+            return remaining;
+        }
+        return attemptTimeout;
+    }
+
+    /** False if the total timeout would be reached by the time {@code delay} is up, leaving no time to do anything. */
+    boolean leavesTimeAfter(Duration delay) {
+        return remainingTotal().map(remaining -> remaining.compareTo(delay) > 0).orElse(true);
+    }
+
+    boolean totalTimeoutExpired() {
+        return remainingTotal().map(Duration::isZero).orElse(false);
+    }
+
+    private Optional<Duration> remainingTotal() {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        return totalTimeout.map(total -> total.compareTo(elapsed) > 0 ? total.minus(elapsed) : Duration.ZERO);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A warm instance of a tool that runs commands sent to it, rather than being started afresh for each. It is sent one
+ * command per line on stdin, as a JSON array of arguments, and answers with the output of the command followed by a
+ * line of {@value #EXIT_MARKER} and the exit code. Whatever it writes to stderr before that line is taken as stderr of
+ * the command, as long as it flushes stderr first.
+ *
+ * <p>Stderr goes through a file rather than a pipe. Two pipes would race each other, so stderr could arrive after the
+ * exit code of the command it belongs to. The file is read every 100ms while a command runs, then once more when its
+ * exit code arrives.
+ */
+final class ToolServer {
+    static final String EXIT_MARKER = "__BETTER_EXEC_EXIT__";
+
+    private static final Logger log = LoggerFactory.getLogger(ToolServer.class);
+
+    private static final byte[] EXIT_MARKER_PREFIX = (EXIT_MARKER + " ").getBytes(StandardCharsets.UTF_8);
+    private static final int STDOUT_BUFFER_SIZE = 8192;
+    private static final int STDERR_BUFFER_SIZE = 8192;
+    private static final Duration STDERR_POLL_INTERVAL = Duration.ofMillis(100);
+
+    private static final ExecutorService STDOUT_PUMPS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "better-exec-tool-server-pump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ScheduledExecutorService STDERR_POLLER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "better-exec-tool-server-stderr");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final List<Object> key;
+    private final Process process;
+    private final OutputStream requests;
+    private final Path stderrFile;
+    private final FileChannel stderrReader;
+    private final ScheduledFuture<?> stderrPoll;
+    private volatile Optional<RunningCommand> current = Optional.empty();
+    private volatile boolean destroyed = false;
+
+    private ToolServer(List<Object> key, Process process, Path stderrFile) throws IOException {
+        this.key = key;
+        this.process = process;
+        this.requests = process.getOutputStream();
+        this.stderrFile = stderrFile;
+        this.stderrReader = FileChannel.open(stderrFile, StandardOpenOption.READ);
+        this.stderrPoll = STDERR_POLLER.scheduleWithFixedDelay(
+                () -> drainStderr(current),
+                STDERR_POLL_INTERVAL.toMillis(),
+                STDERR_POLL_INTERVAL.toMillis(),
+                TimeUnit.MILLISECONDS);
+        STDOUT_PUMPS.execute(this::pumpStdout);
+    }
+
+    static ToolServer start(List<Object> key, ProcessBuilder processBuilder) throws IOException {
+        Path stderrFile = Files.createTempFile("better-exec-tool-server", ".stderr");
+        try {
+            return new ToolServer(
+                    key, processBuilder.redirectError(stderrFile.toFile()).start(), stderrFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(stderrFile);
+            throw e;
+        }
+    }
+
+    /** What servers that are interchangeable with this one have in common. */
+    List<Object> key() {
+        return key;
+    }
+
+    /**
+     * False as soon as the server is destroyed, as the process may take a moment to actually exit, and must not be
+     * handed out again meanwhile.
+     */
+    boolean isAlive() {
+        return !destroyed && process.isAlive();
+    }
+
+    /**
+     * Sends the command to the server, which must not be running another. Its output goes to the given streams until
+     * it finishes, or until {@code destroyWhen} is true after a line of its stdout, at which point the server is
+     * destroyed as it can no longer be trusted to be in a state to run the next command.
+     */
+    RunningCommand send(List<String> command, OutputStream stdout, OutputStream stderr, BooleanSupplier destroyWhen)
+            throws IOException {
+        RunningCommand runningCommand = new RunningCommand(stdout, stderr, destroyWhen);
+        current = Optional.of(runningCommand);
+        try {
+            requests.write((Json.strings(command) + "\n").getBytes(StandardCharsets.UTF_8));
+            requests.flush();
+        } catch (IOException e) {
+            current = Optional.empty();
+            throw new IOException("Tool server is no longer accepting commands", e);
+        }
+        return runningCommand;
+    }
+
+    /** Kills the server and every process it started, as {@link DirectProcess#destroyTree()} does. */
+    void destroy() {
+        destroyed = true;
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /** Called once the server has exited and nothing more will be read from it. */
+    private synchronized void cleanUp() {
+        stderrPoll.cancel(false);
+        try {
+            stderrReader.close();
+            Files.deleteIfExists(stderrFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", stderrFile, e);
+        }
+    }
+
+    private void pumpStdout() {
+        try (InputStream stdout = process.getInputStream()) {
+            byte[] buffer = new byte[STDOUT_BUFFER_SIZE];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int read;
+            while ((read = stdout.read(buffer)) != -1) {
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, lineStart, i + 1 - lineStart);
+                        handleStdoutLine(line.toByteArray());
+                        line.reset();
+                        lineStart = i + 1;
+                    }
+                }
+                line.write(buffer, lineStart, read - lineStart);
+            }
+            if (line.size() > 0) {
+                handleStdoutLine(line.toByteArray());
+            }
+        } catch (IOException e) {
+            // Either the server was destroyed, or the output of the command could not be written, in which case the
+            // server would block once the pipe filled up, so is as good as dead
+            destroy();
+        }
+
+        current.ifPresent(RunningCommand::serverExited);
+        cleanUp();
+    }
+
+    private void handleStdoutLine(byte[] line) throws IOException {
+        Optional<RunningCommand> maybeRunningCommand = current;
+        if (maybeRunningCommand.isEmpty()) {
+            // Output between commands belongs to none of them
+            return;
+        }
+        RunningCommand runningCommand = maybeRunningCommand.get();
+
+        Optional<Integer> exitCode = exitCode(line);
+        if (exitCode.isPresent()) {
+            drainStderr(maybeRunningCommand);
+            current = Optional.empty();
+            runningCommand.exitCode.complete(exitCode.get());
+            return;
+        }
+
+        runningCommand.stdout.write(line);
+        if (runningCommand.destroyWhen.getAsBoolean()) {
+            runningCommand.destroy();
+        }
+    }
+
+    /**
+     * Reads whatever has been written to stderr since last time, giving it to the command if there is one. Stderr
+     * written between commands belongs to none of them, so is dropped.
+     */
+    private synchronized void drainStderr(Optional<RunningCommand> runningCommand) {
+        if (!stderrReader.isOpen()) {
+            return;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(STDERR_BUFFER_SIZE);
+            while (stderrReader.read(buffer) > 0) {
+                if (runningCommand.isPresent()) {
+                    runningCommand.get().stderr.write(buffer.array(), 0, buffer.position());
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read stderr of tool server", e);
+        }
+    }
+
+    private static Optional<Integer> exitCode(byte[] line) {
+        if (line.length <= EXIT_MARKER_PREFIX.length) {
+            return Optional.empty();
+        }
+        for (int i = 0; i < EXIT_MARKER_PREFIX.length; i++) {
+            if (line[i] != EXIT_MARKER_PREFIX[i]) {
+                return Optional.empty();
+            }
+        }
+
+        String code = new String(
+                        line,
+                        EXIT_MARKER_PREFIX.length,
+                        line.length - EXIT_MARKER_PREFIX.length,
+                        StandardCharsets.UTF_8)
+                .trim();
+        try {
+            return Optional.of(Integer.parseInt(code));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /** A command sent to the server, with the same means of waiting for and stopping it as {@link DirectProcess}. */
+    final class RunningCommand {
+        private final OutputStream stdout;
+        private final OutputStream stderr;
+        private final BooleanSupplier destroyWhen;
+        private final CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+        private volatile boolean destroyed = false;
+        private volatile boolean serverExited = false;
+        private boolean timedOut = false;
+
+        private RunningCommand(OutputStream stdout, OutputStream stderr, BooleanSupplier destroyWhen) {
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.destroyWhen = destroyWhen;
+        }
+
+        /**
+         * Waits for the command to finish, returning its exit code. If it runs for longer than the timeout, or the
+         * server dies while running it, the exit code of the server is returned instead.
+         */
+        int waitFor(Optional<Duration> timeout) throws IOException {
+            try {
+                return timeout.isPresent()
+                        ? exitCode.get(timeout.get().toNanos(), TimeUnit.NANOSECONDS)
+                        : exitCode.get();
+            } catch (TimeoutException e) {
+                timedOut = true;
+                destroy();
+                return waitFor(Optional.empty());
+            } catch (InterruptedException e) {
+                destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the tool server to run the command", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to read tool server output", e.getCause());
+            }
+        }
+
+        /** True if the command ran for longer than the timeout given to {@link #waitFor}, which destroys the server. */
+        boolean timedOut() {
+            return timedOut;
+        }
+
+        /**
+         * True if the command did not finish by itself, either as the server was destroyed to stop it or as the server
+         * exited while running it. The exit code is then that of the server, so tells nothing of the command.
+         */
+        boolean stoppedEarly() {
+            return destroyed || serverExited;
+        }
+
+        private void destroy() {
+            destroyed = true;
+            ToolServer.this.destroy();
+        }
+
+        private void serverExited() {
+            if (exitCode.isDone()) {
+                return;
+            }
+
+            serverExited = true;
+            try {
+                int serverExitCode = process.waitFor();
+                drainStderr(Optional.of(this));
+                if (!destroyed) {
+                    stderr.write(
+                            ("\nTool server exited with exit code " + serverExitCode + " while running the command\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+                }
+                exitCode.complete(serverExitCode);
+            } catch (IOException e) {
+                exitCode.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exitCode.completeExceptionally(e);
+            }
+        }
+    }
+}
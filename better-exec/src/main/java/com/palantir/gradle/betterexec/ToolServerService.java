@@ -0,0 +1,131 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.palantir.gradle.betterexec;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Keeps the warm {@link ToolServer}s of the build, so a server started by one task is reused by the next. Servers are
+ * pooled by the command that starts them and the environment and working dir they are started with, and are all
+ * stopped once the build finishes, so none are left running in the daemon between builds.
+ */
+abstract class ToolServerService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+    private final Map<List<Object>, Deque<ToolServer>> idle = new HashMap<>();
+    private final Map<List<Object>, Integer> started = new HashMap<>();
+    private final List<ToolServer> all = new ArrayList<>();
+    private boolean closed = false;
+
+    // Required so Gradle can make the type with reflection, while still keeping the class package-private
+    @SuppressWarnings("checkstyle:RedundantModifier")
+    public ToolServerService() {}
+
+    static Provider<ToolServerService> register(Project project) {
+        return project.getGradle()
+                .getSharedServices()
+                .registerIfAbsent("betterExecToolServers", ToolServerService.class, spec -> {});
+    }
+
+    /**
+     * Takes an idle server for the exclusive use of the caller, starting one if fewer than {@code maxInstances} are
+     * running, or otherwise waiting for one to be released.
+     */
+    ToolServer acquire(ProcessBuilder processBuilder, int maxInstances) throws IOException, InterruptedException {
+        List<Object> key = List.of(
+                List.copyOf(processBuilder.command()),
+                Map.copyOf(processBuilder.environment()),
+                String.valueOf(processBuilder.directory()));
+        synchronized (this) {
+            while (true) {
+                checkNotClosed();
+                ToolServer idleServer = idle.computeIfAbsent(key, serverKey -> new ArrayDeque<>())
+                        .poll();
+                if (idleServer != null && idleServer.isAlive()) {
+                    return idleServer;
+                } else if (idleServer != null) {
+                    forget(idleServer);
+                } else if (started.getOrDefault(key, 0) < maxInstances) {
+                    started.merge(key, 1, Integer::sum);
+                    break;
+                } else {
+                    wait();
+                }
+            }
+        }
+
+        // Started outside the lock, as other tasks can carry on using servers that are already running meanwhile
+        try {
+            ToolServer server = ToolServer.start(key, processBuilder);
+            synchronized (this) {
+                all.add(server);
+                if (closed) {
+                    server.destroy();
+                    checkNotClosed();
+                }
+            }
+            return server;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                started.merge(key, -1, Integer::sum);
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /** Gives the server back to be reused, unless it died or was destroyed while in use. */
+    synchronized void release(ToolServer server) {
+        if (closed) {
+            server.destroy();
+        } else if (!server.isAlive()) {
+            forget(server);
+        } else {
+            idle.get(server.key()).push(server);
+        }
+        notifyAll();
+    }
+
+    private void forget(ToolServer server) {
+        server.destroy();
+        started.merge(server.key(), -1, Integer::sum);
+        all.remove(server);
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The build has finished, so no more tool servers can be started");
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        all.forEach(ToolServer::destroy);
+        all.clear();
+        idle.clear();
+        started.clear();
+        notifyAll();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CountDownLatch
+import spock.lang.Specification
+
+class AsyncConsoleOutputStreamTest extends Specification {
+    def console = new ByteArrayOutputStream()
+    def stream = new AsyncConsoleOutputStream(console)
+
+    def 'hands over output written a byte at a time'() {
+        when:
+        'first\nsecond\n'.getBytes(StandardCharsets.UTF_8).each { stream.write(it) }
+        stream.finish()
+
+        then:
+        console.toString(StandardCharsets.UTF_8) == 'first\nsecond\n'
+    }
+
+    def 'hands over a partial last line on finish'() {
+        when:
+        stream.write('whole\npartial'.getBytes(StandardCharsets.UTF_8))
+        stream.finish()
+
+        then:
+        console.toString(StandardCharsets.UTF_8) == 'whole\npartial'
+    }
+
+    def 'drops output once every stream together has queued too much for the console'() {
+        given:
+        def release = new CountDownLatch(1)
+        def stuckConsole = new OutputStream() {
+            @Override
+            void write(int b) {
+                release.await()
+            }
+
+            @Override
+            void write(byte[] bytes, int off, int len) {
+                release.await()
+            }
+        }
+        def stuck = new AsyncConsoleOutputStream(stuckConsole)
+        def filling = new AsyncConsoleOutputStream(new ByteArrayOutputStream())
+        def line = ('x' * 1023 + '\n').getBytes(StandardCharsets.UTF_8)
+
+        when:
+        stuck.write(line)
+        1024.times { filling.write(line) }
+        stream.write('dropped\n'.getBytes(StandardCharsets.UTF_8))
+        release.countDown()
+        [stuck, filling, stream]*.finish()
+
+        then:
+        console.toString(StandardCharsets.UTF_8) == ('[... 8 bytes not shown as the console could not keep up, see the '
+                + 'log file for the full output ...]\n')
+    }
+}
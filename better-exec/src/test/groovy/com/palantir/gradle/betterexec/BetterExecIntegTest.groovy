@@ -60,7 +60,7 @@ class BetterExecIntegTest extends IntegrationSpec {
         then:
         def output = circleArtifactsLogOutput('foo')
 
-        output == 'Hello I am in: subdir, also: bar\n'
+        withoutMetrics(output) == 'Hello I am in: subdir, also: bar\n'
     }
 
     def 'outputs to custom log file location'() {
@@ -78,7 +78,144 @@ class BetterExecIntegTest extends IntegrationSpec {
         then:
         def output = new File(projectDir, 'output.log').text
 
-        output == 'Hello\n'
+        withoutMetrics(output) == 'Hello\n'
+    }
+
+    @Timeout(30)
+    def 'writes output to the log file while the process is still running'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                circleLogFilePath = file('output.log')
+                command = ['sh', '-c', 'echo started && while ! grep -q started "$LOG_FILE"; do sleep 0.2; done && echo finished']
+                environment.put 'LOG_FILE', file('output.log').absolutePath
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        withoutMetrics(new File(projectDir, 'output.log').text) == 'started\nfinished\n'
+    }
+
+    def 'writes a gzipped log file when asked to'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo Hello']
+                logCompression = com.palantir.gradle.betterexec.LogCompression.GZIP
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def logFile = new File(projectDir, 'circle-artifacts/project.foo.log.gz')
+        def output = new java.util.zip.GZIPInputStream(new FileInputStream(logFile)).text
+        withoutMetrics(output) == 'Hello\n'
+    }
+
+    def 'runs commands with its own process engine when asked to'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['cat']
+                stdin = 'Stdin\\n'
+                executionEngine = com.palantir.gradle.betterexec.ExecutionEngine.PROCESS_BUILDER
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def logFile = new File(projectDir, 'circle-artifacts/project.foo.log')
+        withoutMetrics(logFile.text) == 'Stdin\n'
+    }
+
+    def 'gives each attempt the whole of the stdin file'() {
+        file('input.txt') << 'From a file\n'
+
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'cat && if [ ! -e retried ]; then touch retried && echo Flaky && exit 1; fi']
+                stdinFile = file('input.txt')
+                retryWhenOutputContains 'Flaky'
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def logFile = new File(projectDir, 'circle-artifacts/project.foo.log')
+        withoutMetrics(logFile.text).count('From a file\n') == 2
+    }
+
+    def 'lets the process write its output straight to the log file when asked to'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo Stdout && echo Stderr >&2 && exit 3']
+                showRealTimeLogs = false
+                executionEngine = com.palantir.gradle.betterexec.ExecutionEngine.REDIRECT_TO_FILE
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('Task failed after 1 attempts with exit code 3.')
+        result.standardError.contains('Stdout\nStderr\n')
+        def logFile = new File(projectDir, 'circle-artifacts/project.foo.log')
+        withoutMetrics(logFile.text) == 'Stdout\nStderr\n'
+    }
+
+    def 'does not write straight to the log file when retryWhen needs to see all of the output'() {
+        //language=gradle
+        buildFile << '''
+            import com.palantir.gradle.betterexec.RetryWhenOutputContainsFailure
+
+            task foo(type: BetterExec) {
+                // The match is well before the last 64 KiB, which is all that is read back from a redirected log
+                command = ['sh', '-c', 'echo Failure && yes x | head -c 200000 && exit 1']
+                showRealTimeLogs = false
+                executionEngine = com.palantir.gradle.betterexec.ExecutionEngine.REDIRECT_TO_FILE
+                retryWhen(new RetryWhenOutputContainsFailure())
+                maxRetries = 1
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('Task failed after 2 attempts with exit code 1.')
+        circleArtifactsLogOutput('foo').contains('Retrying after 1 attempt(s) as output matches retryWhen')
+    }
+
+    def 'lists only the errors found by the output parsers when a command fails'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo Compiling && echo "Foo.java:3: error: boom" && echo Noise && exit 1']
+                showRealTimeLogs = false
+                outputParsers.add(com.palantir.gradle.betterexec.OutputParsers.compilerErrors())
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('Errors found in the output (1 error, 0 warnings):\n\nFoo.java:3: error: boom')
+        !result.standardError.contains('Output:')
+        def logFile = new File(projectDir, 'circle-artifacts/project.foo.log')
+        withoutMetrics(logFile.text) == 'Compiling\nFoo.java:3: error: boom\nNoise\n'
     }
 
     def 'when task is run over multiple gradle invocations, the output log makes a new file each time'() {
@@ -97,8 +234,8 @@ class BetterExecIntegTest extends IntegrationSpec {
         def output1 = circleArtifactsLogOutput('foo')
         def output2 = circleArtifactsLogOutput('foo.2')
 
-        output1 == 'Hello\n'
-        output2 == 'Hello\n'
+        withoutMetrics(output1) == 'Hello\n'
+        withoutMetrics(output2) == 'Hello\n'
     }
 
     def 'prints the custom error message'() {
@@ -163,6 +300,47 @@ class BetterExecIntegTest extends IntegrationSpec {
         shouldShowRealTimeLogs << ["true", "false"]
     }
 
+    def 'only keeps the head and tail of the output in the failure message when configured with captureOutputInTempFile=#inTempFile'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo first && seq 1 100000 && echo last && exit 1']
+                capturedOutputHeadKib = 1
+                capturedOutputTailKib = 1
+                captureOutputInTempFile = IN_TEMP_FILE
+            }
+        '''.replace("IN_TEMP_FILE", inTempFile).stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('first')
+        result.standardError.contains('bytes omitted, see the log file for the full output')
+        result.standardError.contains('last')
+        !result.standardError.contains('\n50000\n')
+        circleArtifactsLogOutput('foo').contains('\n50000\n')
+
+        where:
+        inTempFile << ["false", "true"]
+    }
+
+    def 'rejects a negative amount of output to capture'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo foo']
+                capturedStderrTailKib = -1
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('capturedStderrTailKib must be at least 0, but was -1')
+    }
+
     def 'uses full path for command'() {
         buildFile << '''
             task foo(type: BetterExec) {
@@ -209,7 +387,7 @@ class BetterExecIntegTest extends IntegrationSpec {
         then:
         def output = circleArtifactsLogOutput('foo')
 
-        output == 'FOO=this is my foo text\n'
+        withoutMetrics(output) == 'FOO=this is my foo text\n'
     }
 
     def 'fails after exceeding maxRetries'() {
@@ -232,6 +410,28 @@ class BetterExecIntegTest extends IntegrationSpec {
         failureMessage.contains 'Task failed after 4 attempts with exit code 255.'
     }
 
+    def 'stops retrying once the retry time budget would be exceeded'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo error && exit 255']
+                retryWhenOutputContains 'error'
+                maxRetries = 3
+                retryInitialBackoff = java.time.Duration.ofSeconds(10)
+                // Shorter than the attempt itself, so no delay can fit in it, however short the jitter makes it
+                retryTimeBudget = java.time.Duration.ofMillis(1)
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+        def failureMessage = result.failure.cause.cause.cause.message
+
+        then:
+        result.standardOutput.contains 'Not retrying as the retry time budget of PT0.001S would be exceeded'
+        failureMessage.contains 'Task failed after 1 attempts with exit code 255.'
+    }
+
     def 'retries when there is a matching error based on some predicate'() {
         new File(getProjectDir(), "subdir").mkdir()
 
@@ -261,6 +461,33 @@ class BetterExecIntegTest extends IntegrationSpec {
         output.contains("Retrying after 1 attempt(s) as output matches retryWhen")
     }
 
+    def 'retries when a line of the output matches based on retryWhenAnyLine'() {
+        new File(getProjectDir(), "subdir").mkdir()
+
+        //language=gradle
+        buildFile << '''
+            import com.palantir.gradle.betterexec.RetryWhenOutputContainsFailure
+
+            task foo(type: BetterExec) {
+                command = provider {
+                    ['bash', '-c', '[ -f counter ] || echo 1 >counter; if [[ "$(cat counter)" == 2 ]]; then echo Success; else printf "first line\\nsecond Failure"; expr "$(cat counter)" + 1 >counter; exit 1; fi']
+                }
+                workingDir = 'subdir'
+                retryWhenAnyLine(new RetryWhenOutputContainsFailure())
+                maxRetries = 1
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def output = circleArtifactsLogOutput('foo')
+
+        output.contains("second Failure")
+        output.contains("Retrying after 1 attempt(s) as output matches retryWhen")
+    }
+
     def 'retries when there is a matching error based on retryWhenOutputContains'() {
         new File(getProjectDir(), "subdir").mkdir()
 
@@ -287,6 +514,132 @@ class BetterExecIntegTest extends IntegrationSpec {
         output.contains("Retrying after 1 attempt(s) as output matches retryWhen")
     }
 
+    def 'keeps stderr separately and only retries on the output stream the condition targets'() {
+        //language=gradle
+        buildFile << '''
+            import com.palantir.gradle.betterexec.OutputChannel
+
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo stdout is flaky; echo real error >&2; exit 1']
+                retryWhenOutputContains(OutputChannel.STDERR, 'flaky')
+                separateStderr = true
+                capturedOutputHeadKib = 0
+                capturedOutputTailKib = 0
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('Task failed after 1 attempts with exit code 1.')
+        result.standardError.contains('bytes omitted')
+        !result.standardError.contains('stdout is flaky')
+        result.standardError.contains('''
+            Stderr:
+
+            real error
+            '''.stripIndent(true))
+        circleArtifactsLogOutput('foo').contains('stdout is flaky')
+    }
+
+    @Timeout(30)
+    def 'stops the process and retries as soon as the output matches when abortAndRetryOnMatch is set'() {
+        new File(getProjectDir(), "subdir").mkdir()
+
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = provider {
+                    ['bash', '-c', '[ -f counter ] || echo 1 >counter; if [[ "$(cat counter)" == 2 ]]; then echo Success; else expr "$(cat counter)" + 1 >counter; echo "Connection reset"; sleep 60; fi']
+                }
+                workingDir = 'subdir'
+                retryWhenOutputContains 'Connection reset'
+                abortAndRetryOnMatch = true
+                maxRetries = 1
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def output = circleArtifactsLogOutput('foo')
+
+        output.contains("Retrying after 1 attempt(s) as output matches retryWhen (output contains 'Connection reset')")
+        output.contains("Success")
+    }
+
+    @Timeout(30)
+    def 'kills the process and retries when an attempt times out'() {
+        new File(getProjectDir(), "subdir").mkdir()
+
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = provider {
+                    ['bash', '-c', '[ -f counter ] || echo 1 >counter; if [[ "$(cat counter)" == 2 ]]; then echo Success; else expr "$(cat counter)" + 1 >counter; sleep 60; fi']
+                }
+                workingDir = 'subdir'
+                attemptTimeout = java.time.Duration.ofSeconds(2)
+                maxRetries = 1
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def output = circleArtifactsLogOutput('foo')
+
+        output.contains("Retrying after 1 attempt(s) as the attempt timed out after PT2S")
+        output.contains("Success")
+    }
+
+    @Timeout(30)
+    def 'fails without retrying once the total timeout is reached'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'sleep 60']
+                totalTimeout = java.time.Duration.ofSeconds(2)
+                maxRetries = 3
+            }
+        '''.stripIndent(true)
+
+        when:
+        def failureMessage = runTasksWithFailure('foo').failure.cause.cause.cause.message
+
+        then:
+        failureMessage.contains 'Task failed after 1 attempts'
+        failureMessage.contains 'Stopped as the total timeout of PT2S was reached.'
+    }
+
+    @Timeout(30)
+    def 'does not wait to retry for longer than is left of the total timeout'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo error && exit 1']
+                retryWhenOutputContains 'error'
+                maxRetries = 3
+                // So long that the jitter all but never picks a delay short enough to fit in what is left
+                retryInitialBackoff = java.time.Duration.ofDays(365)
+                retryMaxBackoff = java.time.Duration.ofDays(365)
+                totalTimeout = java.time.Duration.ofSeconds(10)
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+        def failureMessage = result.failure.cause.cause.cause.message
+
+        then:
+        result.standardOutput.contains 'Not retrying as the total timeout of PT10S would be reached first'
+        failureMessage.contains 'Task failed after 1 attempts with exit code 1.'
+        failureMessage.contains 'Stopped as the total timeout of PT10S was reached.'
+    }
+
     def 'throws a nice error when you try to use a closure in retryWhen'() {
         // language=gradle
         buildFile << '''
@@ -361,6 +714,373 @@ class BetterExecIntegTest extends IntegrationSpec {
         runTasksSuccessfully('foo', 'bar', '--parallel')
     }
 
+    @Timeout(30)
+    def 'runs no more tasks sharing a concurrency tag at once than its limit'() {
+        // language=gradle
+        buildFile << '''
+            // Creating a directory fails if it already exists, so this fails if two run at once
+            ['foo', 'bar', 'baz'].each { name ->
+                task "$name"(type: BetterExec) {
+                    command = ['sh', '-c', 'mkdir heavy-running && sleep 1 && rmdir heavy-running']
+                    limitConcurrency 'heavy', 1
+                }
+            }
+
+            task cheap(type: BetterExec) {
+                command = ['sh', '-c', 'while [ ! -e heavy-running ]; do sleep 0.1; done']
+            }
+        '''.stripIndent(true)
+
+        expect:
+        runTasksSuccessfully('foo', 'bar', 'baz', 'cheap', '--parallel')
+    }
+
+    def 'fails when a concurrency tag is given different limits'() {
+        // language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['true']
+                limitConcurrency 'heavy', 1
+            }
+
+            task bar(type: BetterExec) {
+                command = ['true']
+                limitConcurrency 'heavy', 2
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains("Concurrency of 'heavy' is already limited to 1, so cannot also be limited to 2")
+    }
+
+    def 'fails when a build service of the same name as a concurrency tag was registered by something else'() {
+        // language=gradle
+        buildFile << '''
+            abstract class Unrelated implements BuildService<BuildServiceParameters.None> {}
+
+            gradle.sharedServices.registerIfAbsent('betterExecConcurrencyLimit-heavy', Unrelated) {}
+
+            task foo(type: BetterExec) {
+                command = ['true']
+                limitConcurrency 'heavy', 1
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains("Concurrency of 'heavy' cannot be limited, as a build service named "
+                + "'betterExecConcurrencyLimit-heavy' was already registered by something else, with no limit")
+    }
+
+    def 'learns the memory estimate of a command from its peak memory use'() {
+        // language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo hello']
+                memoryEstimateMib = 64
+                learnMemoryEstimate = true
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def learned = new File(projectDir, 'build/tmp/foo/memory-estimates').listFiles()
+        learned.size() == 1
+        Long.parseLong(learned[0].text) > 0
+    }
+
+    def 'prints the output of a task again when it is taken from the build cache'() {
+        settingsFile << '''
+            buildCache {
+                local {
+                    directory = file('build-cache')
+                }
+            }
+        '''.stripIndent(true)
+
+        // language=gradle
+        buildFile << '''
+            @CacheableTask
+            abstract class Hello extends BetterExec {}
+
+            task foo(type: Hello) {
+                command = ['sh', '-c', 'echo hello from the command']
+                cachedOutputLog = file('build/foo-output.log.gz')
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo', '--build-cache')
+        file('build').deleteDir()
+        def result = runTasksSuccessfully('foo', '--build-cache')
+
+        then:
+        result.standardOutput.contains(':foo FROM-CACHE')
+        result.standardOutput.contains('Output of :foo, from the build cache:\nhello from the command\n')
+    }
+
+    def 'runs identical commands only once per build when their output is cached'() {
+        file('input.txt') << 'input'
+
+        // language=gradle
+        buildFile << '''
+            @CacheableTask
+            abstract class Check extends BetterExec {}
+
+            ['foo', 'bar'].each { name ->
+                task "$name"(type: Check) {
+                    command = ['sh', '-c', 'echo ran >> runs.txt && echo hello']
+                    inputs.file('input.txt').withPathSensitivity(PathSensitivity.RELATIVE)
+                    cachedOutputLog = file("build/${name}-output.log.gz")
+                }
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksSuccessfully('foo', 'bar')
+
+        then:
+        file('runs.txt').text == 'ran\n'
+        result.standardOutput.contains('from an identical command run by another task:\nhello\n')
+        file('build/foo-output.log.gz').exists()
+        file('build/bar-output.log.gz').exists()
+    }
+
+    def 'runs identical commands only once per build when run by tasks of different projects'() {
+        settingsFile << '''
+            include 'a', 'b'
+        '''.stripIndent(true)
+        file('a/input.txt') << 'input'
+        file('b/input.txt') << 'input'
+
+        // language=gradle
+        buildFile << '''
+            @CacheableTask
+            abstract class Check extends BetterExec {}
+
+            subprojects {
+                task foo(type: Check) {
+                    command = ['sh', '-c', "echo ran >> ${rootDir}/runs.txt && echo hello"]
+                    inputs.file('input.txt').withPathSensitivity(PathSensitivity.RELATIVE)
+                    cachedOutputLog = file('build/foo-output.log.gz')
+                }
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksSuccessfully(':a:foo', ':b:foo')
+
+        then:
+        file('runs.txt').text == 'ran\n'
+        result.standardOutput.contains('from an identical command run by another task:\nhello\n')
+        file('a/build/foo-output.log.gz').exists()
+        file('b/build/foo-output.log.gz').exists()
+    }
+
+    def 'runs identical commands every time when their tasks declare no input files'() {
+        settingsFile << '''
+            include 'a', 'b'
+        '''.stripIndent(true)
+
+        // language=gradle
+        buildFile << '''
+            @CacheableTask
+            abstract class Check extends BetterExec {}
+
+            subprojects {
+                task foo(type: Check) {
+                    command = ['sh', '-c', "echo ran >> ${rootDir}/runs.txt && echo hello"]
+                    cachedOutputLog = file('build/foo-output.log.gz')
+                }
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksSuccessfully(':a:foo', ':b:foo')
+
+        then:
+        file('runs.txt').text == 'ran\nran\n'
+        !result.standardOutput.contains('from an identical command run by another task')
+    }
+
+    def 'sends commands to a warm tool server rather than starting a process for each'() {
+        // language=gradle
+        buildFile << '''
+            ['foo', 'bar'].each { name ->
+                task "$name"(type: BetterExec) {
+                    toolServerCommand = ['sh', '-c', 'while read command; do echo $$ >> server-pids.txt; echo "ran $command"; echo __BETTER_EXEC_EXIT__ 0; done']
+                    // Otherwise foo and bar may run at the same time, each on a server of its own
+                    toolServerInstances = 1
+                    command = [name]
+                }
+            }
+
+            task failing(type: BetterExec) {
+                toolServerCommand = ['sh', '-c', 'while read command; do echo "broke" >&2; echo __BETTER_EXEC_EXIT__ 3; done']
+                command = ['anything']
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo', 'bar')
+        def failure = runTasksWithFailure('failing')
+
+        then:
+        def pids = file('server-pids.txt').readLines()
+        pids.size() == 2
+        pids.toSet().size() == 1
+        failure.standardError.contains('Task failed after 1 attempts with exit code 3.')
+        failure.standardError.contains('broke')
+    }
+
+    def 'runs every command of a batch and reports all the failures together'() {
+        // language=gradle
+        buildFile << '''
+            import com.palantir.gradle.betterexec.BetterExecBatch
+
+            task foo(type: BetterExecBatch) {
+                command(['sh', '-c', 'echo first'])
+                command(['sh', '-c', 'echo second failed && exit 2'])
+                command(['sh', '-c', 'echo third'])
+                command(['sh', '-c', 'echo fourth failed && exit 4'])
+                maxParallelism = 2
+            }
+        '''.stripIndent(true)
+
+        when:
+        def result = runTasksWithFailure('foo')
+
+        then:
+        result.standardError.contains('2 of 4 commands failed:')
+        result.standardError.contains('[sh, -c, echo second failed && exit 2]: Task failed after 1 attempts with exit code 2.')
+        result.standardError.contains('[sh, -c, echo fourth failed && exit 4]: Task failed after 1 attempts with exit code 4.')
+        circleArtifactsLogOutput('foo.command-1').contains('first')
+        circleArtifactsLogOutput('foo.command-3').contains('third')
+        circleArtifactsLogOutput('foo').contains('[sh, -c, echo third] -> project.foo.command-3.log')
+    }
+
+    def 'does not hold up the commands of a batch behind a slow one'() {
+        // language=gradle
+        buildFile << '''
+            import com.palantir.gradle.betterexec.BetterExecBatch
+
+            task foo(type: BetterExecBatch) {
+                command(['sh', '-c', 'sleep 3 && echo slow >> order.txt'])
+                command(['sh', '-c', 'echo second >> order.txt'])
+                command(['sh', '-c', 'echo third >> order.txt'])
+                command(['sh', '-c', 'echo fourth >> order.txt'])
+                maxParallelism = 2
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo', '--max-workers=2')
+
+        then:
+        def order = file('order.txt').readLines()
+        order.toSet() == ['slow', 'second', 'third', 'fourth'] as Set
+        order.last() == 'slow'
+    }
+
+    def 'records the metrics of each attempt in the log file and metrics file'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo Hello && exit 1']
+                circleLogFilePath = file('output.log')
+                metricsFile = file('metrics.jsonl')
+                retryWhenOutputContains 'Hello'
+                maxRetries = 1
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksWithFailure('foo')
+
+        then:
+        def output = new File(projectDir, 'output.log').text
+        output.contains('Attempt 1: exit code 1, wall time ')
+        output.contains('Attempt 2: exit code 1, wall time ')
+
+        def metrics = new File(projectDir, 'metrics.jsonl').readLines()
+        metrics.size() == 2
+        metrics[0].startsWith('{"task":":foo","command":[')
+        metrics[0].contains('"attempt":1,"exitCode":1,')
+        metrics[1].contains('"cpuTotalMillis":')
+    }
+
+    def 'records the cpu time of a short busy loop in the metrics file'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'i=0; while [ $i -lt 500000 ]; do i=$((i+1)); done']
+                metricsFile = file('metrics.jsonl')
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        def metrics = new File(projectDir, 'metrics.jsonl').text
+        (metrics =~ /"cpuTotalMillis":(\d+)/)[0][1] as long >= 100
+    }
+
+    def 'writes a report of every command run in the build'() {
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo foo']
+            }
+
+            task bar(type: BetterExecBatch) {
+                command(['sh', '-c', 'echo bar1'])
+                command(['sh', '-c', 'echo bar2'])
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo', 'bar')
+
+        then:
+        def executions = new File(projectDir, 'build/reports/better-exec/executions.json').text
+        executions.contains('"task":":foo","command":[')
+        executions.contains('"echo bar1"]')
+        executions.contains('"echo bar2"]')
+        executions.contains('"succeeded":true,"attempts":[{"attempt":1,"exitCode":0,')
+
+        new File(projectDir, 'build/reports/better-exec/timeline.html').text.contains('3 command(s)')
+    }
+
+    def 'does not write a report when it is turned off'() {
+        file('gradle.properties').text = 'betterExec.report=false'
+
+        //language=gradle
+        buildFile << '''
+            task foo(type: BetterExec) {
+                command = ['sh', '-c', 'echo foo']
+            }
+        '''.stripIndent(true)
+
+        when:
+        runTasksSuccessfully('foo')
+
+        then:
+        !new File(projectDir, 'build/reports/better-exec').exists()
+    }
+
+    /** Strips the metrics written after each attempt, leaving just what the command output. */
+    static String withoutMetrics(String log) {
+        return log.replaceAll(/\n\nAttempt \d+: [^\n]*\n/, '')
+    }
+
     String circleArtifactsLogOutput(String taskName) {
         return new File(projectDir, "circle-artifacts/project.${taskName}.log").text
     }
@@ -0,0 +1,78 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.nio.file.Files
+import java.nio.file.Path
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class CommandKeyTest extends Specification {
+    @TempDir
+    Path tempDir
+
+    def 'gives the same key to the same command on the same inputs in different projects'() {
+        given:
+        def first = project('first', ['src/Foo.proto': 'foo'])
+        def second = project('second', ['src/Foo.proto': 'foo'])
+
+        expect:
+        key(first) == key(second)
+    }
+
+    def 'tells apart inputs whose contents were swapped between paths'() {
+        given:
+        def first = project('first', ['a/Foo.proto': 'one', 'b/Foo.proto': 'two'])
+        def second = project('second', ['a/Foo.proto': 'two', 'b/Foo.proto': 'one'])
+
+        expect:
+        key(first) != key(second)
+    }
+
+    def 'tells apart the same inputs in different places in the project'() {
+        given:
+        def first = project('first', ['a/Foo.proto': 'foo'])
+        def second = project('second', ['b/Foo.proto': 'foo'])
+
+        expect:
+        key(first) != key(second)
+    }
+
+    def 'tells apart different working dirs within the project'() {
+        given:
+        def projectDir = project('first', [:])
+
+        expect:
+        CommandKey.of(['lint'], [:], projectDir, projectDir, Optional.empty(), [])
+                != CommandKey.of(['lint'], [:], projectDir, projectDir.resolve('sub'), Optional.empty(), [])
+    }
+
+    private Path project(String name, Map<String, String> inputs) {
+        def projectDir = Files.createDirectory(tempDir.resolve(name))
+        inputs.each { path, contents ->
+            def file = projectDir.resolve(path)
+            Files.createDirectories(file.parent)
+            Files.writeString(file, contents)
+        }
+        return projectDir
+    }
+
+    private static String key(Path projectDir) {
+        def inputs = Files.walk(projectDir).filter(Files::isRegularFile).map(Path::toFile).toList()
+        return CommandKey.of(['lint'], [:], projectDir, projectDir, Optional.empty(), inputs)
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import spock.lang.Specification
+import spock.lang.TempDir
+
+class CommandPathCacheTest extends Specification {
+    @TempDir
+    Path tempDir
+
+    def 'reuses the result while the directories searched are unchanged'() {
+        given:
+        def bin = directory('bin')
+        def tool = executable(bin, 'tool')
+        CommandPathCache.resolve(bin.toString(), 'tool')
+
+        when:
+        // Gone without the directory looking modified, so only a cached result can still find it
+        def lastModified = Files.getLastModifiedTime(bin)
+        Files.delete(tool)
+        Files.setLastModifiedTime(bin, lastModified)
+
+        then:
+        CommandPathCache.resolve(bin.toString(), 'tool') == Optional.of(tool)
+        CommandPathCache.resolveUncached(bin.toString(), 'tool') == Optional.empty()
+    }
+
+    def 'searches again once a directory searched is modified'() {
+        given:
+        def first = directory('first')
+        def second = directory('second')
+        def pathEnvVar = first.toString() + ':' + second.toString()
+        def inSecond = executable(second, 'tool')
+
+        expect:
+        CommandPathCache.resolve(pathEnvVar, 'tool') == Optional.of(inSecond)
+
+        when:
+        def inFirst = executable(first, 'tool')
+        markModified(first)
+
+        then:
+        CommandPathCache.resolve(pathEnvVar, 'tool') == Optional.of(inFirst)
+    }
+
+    def 'searches again when the PATH changes'() {
+        given:
+        def first = directory('first')
+        def second = directory('second')
+        def inFirst = executable(first, 'tool')
+        def inSecond = executable(second, 'tool')
+
+        expect:
+        CommandPathCache.resolve(first.toString(), 'tool') == Optional.of(inFirst)
+        CommandPathCache.resolve(second.toString(), 'tool') == Optional.of(inSecond)
+    }
+
+    def 'finds nothing for a missing executable, until it is added'() {
+        given:
+        def bin = directory('bin')
+        executable(bin, 'other')
+
+        expect:
+        CommandPathCache.resolve(bin.toString(), 'tool') == Optional.empty()
+
+        when:
+        def tool = executable(bin, 'tool')
+        markModified(bin)
+
+        then:
+        CommandPathCache.resolve(bin.toString(), 'tool') == Optional.of(tool)
+    }
+
+    def 'skips files that are not executable'() {
+        given:
+        def first = directory('first')
+        def second = directory('second')
+        Files.createFile(first.resolve('tool'))
+        def inSecond = executable(second, 'tool')
+
+        expect:
+        CommandPathCache.resolveUncached(first.toString() + ':' + second.toString(), 'tool') == Optional.of(inSecond)
+    }
+
+    private Path directory(String name) {
+        return Files.createDirectory(tempDir.resolve(name))
+    }
+
+    /** Some filesystems only keep the modified time to the second, too coarse to see a change made straight away. */
+    private static void markModified(Path directory) {
+        def lastModified = Files.getLastModifiedTime(directory).toInstant()
+        Files.setLastModifiedTime(directory, FileTime.from(lastModified.plusSeconds(60)))
+    }
+
+    private static Path executable(Path directory, String name) {
+        def file = Files.createFile(directory.resolve(name))
+        file.toFile().setExecutable(true)
+        return file
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import spock.lang.Specification
+
+class FileBackedOutputCaptureTest extends Specification {
+    def 'reads back characters that are split across read windows'() {
+        given:
+        def capture = FileBackedOutputCapture.everything()
+        def output = 'é€😀' * 100_000
+
+        when:
+        capture.write(output.getBytes(StandardCharsets.UTF_8))
+
+        then:
+        capture.contents() == output
+
+        cleanup:
+        capture.close()
+    }
+
+    def 'reads back only the head and tail'() {
+        given:
+        def capture = FileBackedOutputCapture.headAndTail(4, 4)
+
+        when:
+        capture.write('head middle tail'.getBytes(StandardCharsets.UTF_8))
+
+        then:
+        capture.contents() == 'head' + OutputCapture.omittedMarker(8) + 'tail'
+
+        cleanup:
+        capture.close()
+    }
+
+    def 'reads back at most the first and last few MiB of output too big to map in one go'() {
+        given:
+        def capture = FileBackedOutputCapture.everything()
+        long size = 3L * 1024 * 1024 * 1024
+
+        when:
+        capture.write('head'.getBytes(StandardCharsets.UTF_8))
+        capture.flush()
+        // Leaves a hole in the file, so it takes up no space on disk
+        FileChannel channel = capture.@channel
+        channel.write(ByteBuffer.wrap('tail'.getBytes(StandardCharsets.UTF_8)), size - 4)
+        def contents = capture.contents()
+
+        then:
+        contents.startsWith('head')
+        contents.endsWith('tail')
+        contents.contains(OutputCapture.omittedMarker(size - FileBackedOutputCapture.MAX_READ_BACK_BYTES))
+        contents.length() < FileBackedOutputCapture.MAX_READ_BACK_BYTES + 200
+
+        cleanup:
+        capture.close()
+    }
+}
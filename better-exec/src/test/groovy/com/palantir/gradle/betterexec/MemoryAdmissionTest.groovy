@@ -0,0 +1,147 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import spock.lang.Specification
+import spock.lang.Timeout
+
+@Timeout(30)
+class MemoryAdmissionTest extends Specification {
+    volatile long availableBytes = 1000
+    MemoryAdmission memoryAdmission =
+            new MemoryAdmission({ OptionalLong.of(availableBytes) }, Duration.ofMillis(10))
+
+    def 'waits until the headroom frees up before admitting'() {
+        given:
+        def first = memoryAdmission.admit(Optional.of(600L), 'first')
+
+        when:
+        def second = admitLater(600)
+
+        then:
+        stillWaiting(second)
+
+        when:
+        availableBytes = 1200
+
+        then:
+        second.get(10, TimeUnit.SECONDS) != null
+
+        cleanup:
+        first.close()
+    }
+
+    def 'sets aside only what an admitted process has yet to use'() {
+        given:
+        def first = memoryAdmission.admit(Optional.of(600L), 'first')
+
+        when:
+        def second = admitLater(600)
+
+        then:
+        stillWaiting(second)
+
+        when:
+        // Most of what the first uses is now gone from the available memory instead
+        first.trackUsage { 500L }
+
+        then:
+        second.get(10, TimeUnit.SECONDS) != null
+
+        cleanup:
+        first.close()
+    }
+
+    def 'lets a process through when nothing else is admitted, however much it needs'() {
+        when:
+        def admission = memoryAdmission.admit(Optional.of(5000L), 'huge')
+
+        then:
+        admission != null
+
+        cleanup:
+        admission.close()
+    }
+
+    def 'releases the estimate once the admitted process fails'() {
+        given:
+        def first = memoryAdmission.admit(Optional.of(600L), 'first')
+        def second = admitLater(600)
+
+        when:
+        first.withCloseable {
+            throw new IOException('the process failed')
+        }
+
+        then:
+        thrown(IOException)
+        second.get(10, TimeUnit.SECONDS) != null
+    }
+
+    def 'sets nothing aside for a wait that was interrupted'() {
+        given:
+        def first = memoryAdmission.admit(Optional.of(600L), 'first')
+        Thread.currentThread().interrupt()
+
+        when:
+        memoryAdmission.admit(Optional.of(600L), 'interrupted')
+
+        then:
+        thrown(IOException)
+        Thread.interrupted()
+
+        when:
+        first.close()
+        def third = admitLater(1000)
+
+        then:
+        // Anything still set aside would leave too little for this one
+        third.get(10, TimeUnit.SECONDS) != null
+    }
+
+    def 'admits straight away when there is no estimate or the free memory is unknown'() {
+        given:
+        def unknown = new MemoryAdmission({ OptionalLong.empty() }, Duration.ofMillis(10))
+        def first = unknown.admit(Optional.of(600L), 'first')
+
+        expect:
+        unknown.admit(Optional.of(600L), 'second') != null
+        memoryAdmission.admit(Optional.empty(), 'no estimate') != null
+
+        cleanup:
+        first.close()
+    }
+
+    private CompletableFuture<MemoryAdmission.Admission> admitLater(long estimateBytes) {
+        return CompletableFuture.supplyAsync {
+            memoryAdmission.admit(Optional.of(estimateBytes), 'later')
+        }
+    }
+
+    private static boolean stillWaiting(CompletableFuture<?> admission) {
+        try {
+            admission.get(200, TimeUnit.MILLISECONDS)
+            return false
+        } catch (TimeoutException e) {
+            return true
+        }
+    }
+}
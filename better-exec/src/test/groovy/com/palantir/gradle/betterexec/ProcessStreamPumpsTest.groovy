@@ -0,0 +1,71 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import spock.lang.Specification
+import spock.lang.Timeout
+
+@Timeout(60)
+class ProcessStreamPumpsTest extends Specification {
+    def 'a destination that blocks only holds up its own stream'() {
+        given:
+        def unblock = new CountDownLatch(1)
+        def blocking = new OutputStream() {
+            @Override
+            void write(int b) {
+                unblock.await()
+            }
+        }
+        def stuck = (1..4).collect { start('echo stuck') }
+        def stuckPumps = stuck.collect { ProcessStreamPumps.pump(it, it.inputStream, blocking, {}) }
+
+        when:
+        def process = start('echo hello')
+        def output = new ByteArrayOutputStream()
+        ProcessStreamPumps.pump(process, process.inputStream, output, {}).get(30, TimeUnit.SECONDS)
+
+        then:
+        output.toString(StandardCharsets.UTF_8) == 'hello\n'
+
+        cleanup:
+        unblock.countDown()
+        stuckPumps*.get(30, TimeUnit.SECONDS)
+    }
+
+    def 'reads on its own thread until the end of the stream, after the process has exited'() {
+        given:
+        def process = start('echo early; (sleep 1; echo late) & sleep 0.2')
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def pumped = ProcessStreamPumps.pumpOnOwnThread(process.inputStream, output, {})
+        process.waitFor()
+        pumped.get(30, TimeUnit.SECONDS)
+
+        then:
+        output.toString(StandardCharsets.UTF_8) == 'early\nlate\n'
+    }
+
+    private static Process start(String script) {
+        def process = new ProcessBuilder('sh', '-c', script).start()
+        process.outputStream.close()
+        return process
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.time.Duration
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Timeout
+
+@Requires({ new File('/proc/self/stat').exists() })
+@Timeout(60)
+class ProcessTreeSamplerTest extends Specification {
+    private static final String BUSY_LOOP = 'i=0; while [ $i -lt 500000 ]; do i=$((i+1)); done'
+
+    def 'measures the cpu time of a short busy loop'() {
+        when:
+        def usage = sample(BUSY_LOOP)
+
+        then:
+        usage.cpuTotal().get() >= Duration.ofMillis(100)
+        usage.cpuUser().get() + usage.cpuSystem().get() == usage.cpuTotal().get()
+    }
+
+    def 'counts children that exit between samples'() {
+        when:
+        // Many children far shorter than the sample interval, with the shell reporting what they used in total
+        def process = new ProcessBuilder('sh', '-c', '''
+            for j in $(seq 20); do sh -c 'i=0; while [ $i -lt 5000 ]; do i=$((i+1)); done'; done
+            times
+            sleep 0.5
+        '''.stripIndent(true)).start()
+        def usage = sampleUntilExit(process)
+        def childTimes = process.inputStream.text.readLines()[1].split(' ').collect { parseTimes(it) }
+
+        then:
+        usage.cpuTotal().get() >= childTimes.sum()
+        childTimes.sum() > Duration.ZERO
+    }
+
+    private static ResourceUsage sample(String script) {
+        return sampleUntilExit(new ProcessBuilder('sh', '-c', script).start())
+    }
+
+    private static ResourceUsage sampleUntilExit(Process process) {
+        def sampler = ProcessTreeSampler.start(process.toHandle())
+        process.waitFor()
+        return sampler.stop()
+    }
+
+    /** Parses the {@code 0m1.23s} format {@code times} prints. */
+    private static Duration parseTimes(String time) {
+        def minutesAndSeconds = time.replace('s', '').split('m')
+        return Duration.ofMinutes(minutesAndSeconds[0] as long)
+                .plusMillis(Math.round((minutesAndSeconds[1] as BigDecimal) * 1000))
+    }
+}
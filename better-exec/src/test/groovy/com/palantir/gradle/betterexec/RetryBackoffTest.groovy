@@ -0,0 +1,103 @@
+/*
+ * (c) Copyright 2026 Palantir Technologies Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.gradle.betterexec
+
+import java.time.Duration
+import java.util.function.LongSupplier
+import spock.lang.Specification
+
+class RetryBackoffTest extends Specification {
+    long nowNanos = 0
+    LongSupplier clock = { nowNanos }
+
+    def 'doubles the delay for each failed attempt up to the max backoff'() {
+        given:
+        def backoff = backoff(Optional.of(Duration.ofSeconds(1)), Optional.empty(), alwaysLongest())
+
+        expect:
+        (1..5).collect { backoff.delayBeforeRetry(it).get() } == [1, 2, 4, 5, 5].collect { Duration.ofSeconds(it) }
+    }
+
+    def 'picks each delay between zero and the capped backoff'() {
+        given:
+        def backoff = backoff(Optional.of(Duration.ofSeconds(1)), Optional.empty(), new Random(42))
+
+        when:
+        def delays = (1..1000).collect { backoff.delayBeforeRetry(3).get() }
+
+        then:
+        delays.every { !it.negative && it <= Duration.ofSeconds(4) }
+        delays.toSet().size() > 1
+    }
+
+    def 'does not wait without an initial backoff'() {
+        given:
+        def backoff = backoff(Optional.empty(), Optional.empty(), alwaysLongest())
+
+        expect:
+        backoff.delayBeforeRetry(3) == Optional.of(Duration.ZERO)
+    }
+
+    def 'stops retrying once the delay would take it past the retry time budget'() {
+        given:
+        def budget = Optional.of(Duration.ofSeconds(4))
+
+        expect:
+        backoff(Optional.of(Duration.ofSeconds(5)), budget, alwaysLongest()).delayBeforeRetry(1).isEmpty()
+        backoff(Optional.of(Duration.ofSeconds(5)), budget, alwaysShortest()).delayBeforeRetry(1)
+                == Optional.of(Duration.ZERO)
+    }
+
+    def 'counts the time already spent against the retry time budget'() {
+        given:
+        def backoff = backoff(Optional.of(Duration.ofSeconds(1)), Optional.of(Duration.ofSeconds(5)), alwaysLongest())
+
+        when:
+        nowNanos = Duration.ofSeconds(3).toNanos()
+
+        then:
+        backoff.delayBeforeRetry(1) == Optional.of(Duration.ofSeconds(1))
+
+        when:
+        nowNanos = Duration.ofSeconds(4).toNanos() + 1
+
+        then:
+        backoff.delayBeforeRetry(1).isEmpty()
+    }
+
+    private RetryBackoff backoff(Optional<Duration> initial, Optional<Duration> budget, Random random) {
+        return new RetryBackoff(initial, Duration.ofSeconds(5), budget, random, clock)
+    }
+
+    private static Random alwaysLongest() {
+        return new Random() {
+            @Override
+            long nextLong(long bound) {
+                return bound - 1
+            }
+        }
+    }
+
+    private static Random alwaysShortest() {
+        return new Random() {
+            @Override
+            long nextLong(long bound) {
+                return 0
+            }
+        }
+    }
+}